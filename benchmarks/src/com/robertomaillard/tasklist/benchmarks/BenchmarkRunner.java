@@ -0,0 +1,32 @@
+package com.robertomaillard.tasklist.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the TaskData benchmarks with the gc profiler, so allocation rate is reported next to
+ * throughput and average latency. Standard JMH options are passed through,
+ * e.g. -p items=1000,10000 -p dataSource=XML or a benchmark name regex.
+ */
+
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLineOptions);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include(TaskDataBenchmark.class.getSimpleName());
+        }
+        builder.addProfiler(GCProfiler.class);
+
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.robertomaillard.tasklist.benchmarks;
+
+import com.robertomaillard.tasklist.datamodel.TaskData;
+import com.robertomaillard.tasklist.datamodel.TaskItem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap a loaded task list retains per task item: the task items, the ObservableList and the
+ * deadline index. Not a JMH benchmark, as it measures space, not time. Run with a large heap, e.g.
+ * java -Xmx4g HeapFootprint 1000000 XML. Reports unique details and 50 repeated ones.
+ */
+
+public class HeapFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        TaskData.DataSource dataSource = args.length > 1 ? TaskData.DataSource.valueOf(args[1]) : TaskData.DataSource.XML;
+        TaskData taskData = TaskData.getInstance();
+        File empty = Files.createTempDirectory("tasklist-footprint").toFile();
+
+        for (boolean repeatedDetails : new boolean[] {false, true}) {
+            File directory = Files.createTempDirectory("tasklist-footprint").toFile();
+            taskData.setDataDirectory(directory);
+            taskData.loadTaskItems(dataSource);
+            taskData.addTaskItems(fixture(items, repeatedDetails));
+
+            // SAVES THE FIXTURE AND EMPTIES THE LIST, SO THE LOAD BELOW BUILDS EVERYTHING IT HOLDS
+            taskData.setDataDirectory(empty);
+            taskData.loadTaskItems(dataSource);
+            long before = usedHeap();
+
+            taskData.setDataDirectory(directory);
+            taskData.loadTaskItems(dataSource);
+            long after = usedHeap();
+
+            int loaded = taskData.getTaskItems().size();
+            System.out.printf("%,d task items from %s, %s details: %.1f MB, %.1f bytes per task item%n",
+                    loaded, dataSource, repeatedDetails ? "50 repeated" : "unique",
+                    (after - before) / 1e6, (after - before) / (double) loaded);
+        }
+        taskData.close();
+    }
+
+    private static List<TaskItem> fixture(int items, boolean repeatedDetails) {
+        List<TaskItem> fixture = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            String details = repeatedDetails ? "Follow up with the customer about the renewal, template " + i % 50
+                    : "Some details for task number " + i;
+            fixture.add(new TaskItem("Task " + i, details, LocalDate.of(2020, 1, 1).plusDays(i % 3650)));
+        }
+        return fixture;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
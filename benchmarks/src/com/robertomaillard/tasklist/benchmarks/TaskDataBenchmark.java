@@ -0,0 +1,118 @@
+package com.robertomaillard.tasklist.benchmarks;
+
+import com.robertomaillard.tasklist.datamodel.TaskData;
+import com.robertomaillard.tasklist.datamodel.TaskItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * JMH benchmarks for the TaskData load and mutation paths of both data sources.
+ * Each trial generates its fixture files in a fresh temp directory.
+ * Every mutation is flushed, so the numbers include the write-behind save, not just the ObservableList update.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TaskDataBenchmark {
+
+    @Param({"DB", "XML", "SNAPSHOT"})
+    private TaskData.DataSource dataSource;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int items;
+
+//    THREADS THAT DECODE THE DATA SOURCE ON LOAD. RUN WITH -p loadThreads=1,2,4,8 TO MEASURE THE SCALING
+    @Param({"1"})
+    private int loadThreads;
+
+    private Path directory;
+    private TaskData taskData;
+    private int next;
+
+//    THE TASK ITEM deleteTaskItem() REMOVES. ADDED BEFORE EACH INVOCATION OF THAT BENCHMARK ONLY
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+
+        private TaskItem taskItem;
+
+        @Setup(Level.Invocation)
+        public void addTaskItem(TaskDataBenchmark benchmark) {
+            taskItem = newTaskItem(benchmark.next++);
+            benchmark.taskData.addTaskItem(taskItem);
+            benchmark.taskData.flush();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createFixture() throws IOException {
+        directory = Files.createTempDirectory("tasklist-benchmark");
+        taskData = TaskData.getInstance();
+        taskData.setDataDirectory(directory.toFile());
+        taskData.setLoadThreads(dataSource, loadThreads);
+        taskData.loadTaskItems(dataSource);
+
+        List<TaskItem> fixture = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            fixture.add(newTaskItem(i));
+        }
+        taskData.addTaskItems(fixture);
+
+        // CLOSING SAVES THE FIXTURE AND MERGES THE XML JOURNAL, SO LOADS START FROM A PLAIN FILE
+        taskData.close();
+        taskData.loadTaskItems(dataSource);
+        next = items;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixture() throws IOException {
+        taskData.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int loadTaskItems() {
+        taskData.loadTaskItems(dataSource);
+        return taskData.getTaskItems().size();
+    }
+
+    @Benchmark
+    public void addTaskItem() {
+        taskData.addTaskItem(newTaskItem(next++));
+        taskData.flush();
+    }
+
+    @Benchmark
+    public void editTaskItem() {
+        List<TaskItem> taskItems = taskData.getTaskItems();
+        TaskItem oldItem = taskItems.get(next++ % taskItems.size());
+        taskData.editTaskItem(oldItem, newTaskItem(next));
+        taskData.flush();
+    }
+
+    @Benchmark
+    public void deleteTaskItem(DeleteTarget target) {
+        taskData.deleteTaskItem(target.taskItem);
+        taskData.flush();
+    }
+
+    private static TaskItem newTaskItem(int i) {
+        return new TaskItem("Task " + i, "Details of benchmark task number " + i,
+                LocalDate.of(2020, 1, 1).plusDays(i % 3650));
+    }
+}
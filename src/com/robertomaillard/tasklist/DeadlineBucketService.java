@@ -0,0 +1,89 @@
+package com.robertomaillard.tasklist;
+
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.util.Duration;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Sorts deadlines into past, today, tomorrow and future buckets for the ListView cells.
+ * Today is worked out once and kept in a property. A timer on the JavaFX application thread
+ * moves it on at midnight, so listeners only have to re-render what changed bucket.
+ */
+
+public class DeadlineBucketService {
+
+    public enum Bucket {
+        PAST,
+        TODAY,
+        TOMORROW,
+        FUTURE
+    }
+
+//    LONGEST WAIT BETWEEN DATE CHECKS. THE TIMER RUNS ON A CLOCK THAT STOPS WHILE THE COMPUTER SLEEPS,
+//    SO A WAIT ALL THE WAY TO MIDNIGHT COULD END HOURS LATE AFTER A RESUME
+    private static final Duration MAX_WAIT = Duration.minutes(15);
+
+    private final ReadOnlyObjectWrapper<LocalDate> today = new ReadOnlyObjectWrapper<>(LocalDate.now());
+    private LocalDate tomorrow = today.get().plusDays(1);
+
+    private final PauseTransition timer = new PauseTransition();
+
+    public DeadlineBucketService() {
+        timer.setOnFinished(event -> {
+            checkDate();
+            schedule();
+        });
+    }
+
+//    STARTS WAITING FOR MIDNIGHT
+    public void start() {
+        checkDate();
+        schedule();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+//    ALLOCATES NOTHING. COMPARES AGAINST THE CACHED DATES INSTEAD OF ASKING THE CLOCK
+    public Bucket bucketOf(LocalDate deadline) {
+        int compared = deadline.compareTo(today.get());
+        if (compared < 0) {
+            return Bucket.PAST;
+        }
+        if (compared == 0) {
+            return Bucket.TODAY;
+        }
+        return deadline.equals(tomorrow) ? Bucket.TOMORROW : Bucket.FUTURE;
+    }
+
+    public LocalDate getToday() {
+        return today.get();
+    }
+
+//    CHANGES ONCE A DAY, AT MIDNIGHT
+    public ReadOnlyObjectProperty<LocalDate> todayProperty() {
+        return today.getReadOnlyProperty();
+    }
+
+    private void checkDate() {
+        LocalDate now = LocalDate.now();
+        if (!now.equals(today.get())) {
+            tomorrow = now.plusDays(1);
+            today.set(now);
+        }
+    }
+
+    private void schedule() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay();
+        Duration untilMidnight = Duration.millis(java.time.Duration.between(now, midnight).toMillis() + 1);
+
+        timer.setDuration(untilMidnight.lessThan(MAX_WAIT) ? untilMidnight : MAX_WAIT);
+        timer.playFromStart();
+    }
+}
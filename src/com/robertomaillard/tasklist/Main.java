@@ -1,18 +1,29 @@
 package com.robertomaillard.tasklist;
 
 import com.robertomaillard.tasklist.datamodel.TaskData;
+import com.robertomaillard.tasklist.datamodel.TaskServer;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+
 /**
  * Created by Roberto Maillard on 19/9/2019.
  */
 
 public class Main extends Application {
 
+    private TaskServer server;
+
+    private TaskData.DataSource dataSource;
+
+    private int serverPort;
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -20,8 +31,31 @@ public class Main extends Application {
     @Override
     public void init() throws Exception {
         try {
-            // SPECIFY DATA SOURCE. DB or XML.
-            TaskData.getInstance().loadTaskItems(TaskData.DataSource.DB);
+            // SPECIFY LOADING. true READS DB TASK ITEMS PAGE BY PAGE AS THE LIST SCROLLS
+            TaskData.getInstance().setPagedLoading(false);
+
+            // SPECIFY DETAILS LOADING. true LEAVES DB TASK DETAILS IN THE DATABASE UNTIL A TASK ITEM IS SELECTED OR EDITED
+            TaskData.getInstance().setLazyDetails(false);
+
+            // SPECIFY LOAD THREADS. ONE PER CORE DECODES THE DATA SOURCE IN PARALLEL, 1 ON THIS THREAD ONLY
+            TaskData.getInstance().setLoadThreads(TaskData.DataSource.DB, Runtime.getRuntime().availableProcessors());
+
+            // SPECIFY METRICS LOGGING. SECONDS BETWEEN PRINTED DUMPS OF THE LOAD AND SAVE METRICS, 0 FOR NONE.
+            // JMX CLIENTS SUCH AS jconsole READ THEM AT ANY TIME
+            TaskData.getInstance().getMetrics().register();
+            TaskData.getInstance().getMetrics().setLogIntervalSeconds(0);
+
+            // SPECIFY TASK LIST. ONLY THIS ONE IS LOADED. THE WINDOW SWITCHES TO THE OTHERS, EACH STORED IN FILES OF ITS OWN
+            TaskData.getInstance().switchTaskList(TaskData.DEFAULT_TASK_LIST);
+
+            // SPECIFY DATA SOURCE. DB, XML or SNAPSHOT. convertTaskItems() COPIES AN EXISTING SOURCE TO ANOTHER.
+            // TaskTool COPIES ONE FILE TO ANOTHER FROM THE COMMAND LINE, CSV INCLUDED.
+            // IT IS LOADED IN THE BACKGROUND ONCE THE WINDOW IS SHOWN
+            dataSource = TaskData.DataSource.DB;
+
+            // SPECIFY HTTP API PORT. SCRIPTS AND DASHBOARDS READ AND CHANGE THE TASK LIST AS JSON ON localhost, 0 FOR NONE.
+            // IT IS STARTED ONCE THE TASK LIST IS LOADED
+            serverPort = 0;
         } catch(Exception e) {
             System.out.println(e.getMessage());
         }
@@ -29,13 +63,38 @@ public class Main extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception{
-        Parent root = FXMLLoader.load(getClass().getResource("window.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("window.fxml"));
+        Parent root = loader.load();
         primaryStage.setTitle("TASK LIST");
         primaryStage.setScene(new Scene(root, 809, 500));
         primaryStage.show();
+
+        // SHOWS THE WINDOW FIRST, THEN STREAMS THE TASK ITEMS IN
+        WindowController controller = loader.getController();
+        controller.loadTaskItems(dataSource).addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, event -> {
+            try {
+                startServer(serverPort);
+            } catch (IOException e) {
+                System.out.println("Couldn't start the task server: " + e.getMessage());
+            }
+        });
     }
 
     @Override
     public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+
+        // RELEASES THE DATA SOURCE RESOURCES
+        TaskData.getInstance().close();
+    }
+
+//    SERVES THE TASK LIST ON THE PORT. CHANGES ARE MADE ON THE JavaFX THREAD
+    private void startServer(int port) throws IOException {
+        if (port > 0) {
+            server = new TaskServer(TaskData.getInstance(), Platform::runLater);
+            server.start(port);
+        }
     }
 }
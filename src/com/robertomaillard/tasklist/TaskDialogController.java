@@ -1,5 +1,6 @@
 package com.robertomaillard.tasklist;
 
+import com.robertomaillard.tasklist.datamodel.TaskConflict;
 import com.robertomaillard.tasklist.datamodel.TaskData;
 import com.robertomaillard.tasklist.datamodel.TaskItem;
 import javafx.fxml.FXML;
@@ -51,6 +52,15 @@ public class TaskDialogController {
 
 //    MODIFIES THE TARGET TASK ITEM
     void modifyItem(TaskItem item) {
+        TaskData.getInstance().editTaskItem(item, formItem());
+    }
+
+//    SAVES THE FORM OVER THE TASK ITEM ANOTHER PROGRAM CHANGED OR DELETED
+    void overwriteItem(TaskConflict conflict) {
+        TaskData.getInstance().overwriteTaskItem(conflict, formItem());
+    }
+
+    private TaskItem formItem() {
         String shortDesc = shortDescriptionField.getText().trim();
         String detailsDesc = detailsArea.getText().trim();
         LocalDate deadlineValue = deadlinePicker.getValue();
@@ -59,6 +69,6 @@ public class TaskDialogController {
             deadlineValue=LocalDate.now();
         }
 
-        TaskData.getInstance().editTaskItem(item, new TaskItem(shortDesc, detailsDesc, deadlineValue));
+        return new TaskItem(shortDesc, detailsDesc, deadlineValue);
     }
 }
@@ -0,0 +1,102 @@
+package com.robertomaillard.tasklist;
+
+import com.robertomaillard.tasklist.datamodel.TaskTransfer;
+
+import java.io.File;
+
+/**
+ * Command-line import, export and migration of task lists. Starts no JavaFX stage.
+ * Streams every task item of the source file to the target file, for example
+ * TaskListItems.xml to TaskListItems.db, and prints the progress and throughput as it goes.
+ */
+
+public class TaskTool {
+
+    private static final String USAGE = "Usage: TaskTool <source> <target> [options]\n" +
+            "Copies every task item of the source file to the target file.\n" +
+            "The formats are xml, db, csv and snapshot, told by the file extension unless given.\n" +
+            "  --from <format>   format of the source\n" +
+            "  --to <format>     format of the target\n" +
+            "  --batch <n>       task items per database transaction, " + TaskTransfer.DEFAULT_BATCH_SIZE + " by default\n" +
+            "  --force           replace the target if it exists";
+
+    public static void main(String[] args) {
+        File source = null;
+        File target = null;
+        TaskTransfer.Format from = null;
+        TaskTransfer.Format to = null;
+        int batchSize = TaskTransfer.DEFAULT_BATCH_SIZE;
+        boolean force = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--from":
+                        from = formatOf(args[++i]);
+                        break;
+                    case "--to":
+                        to = formatOf(args[++i]);
+                        break;
+                    case "--batch":
+                        batchSize = Integer.parseInt(args[++i]);
+                        break;
+                    case "--force":
+                        force = true;
+                        break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        } else if (source == null) {
+                            source = new File(args[i]);
+                        } else if (target == null) {
+                            target = new File(args[i]);
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                }
+            }
+            if (target == null) {
+                throw new IllegalArgumentException("A source and a target are needed");
+            }
+            if (from == null) {
+                from = TaskTransfer.formatOf(source);
+            }
+            if (to == null) {
+                to = TaskTransfer.formatOf(target);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "An option is missing its value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        TaskTransfer transfer = new TaskTransfer(source, from, target, to);
+        transfer.setBatchSize(batchSize);
+        transfer.setOverwrite(force);
+        transfer.setProgress((items, elapsedNanos, done) -> {
+            double seconds = elapsedNanos / 1e9;
+            System.out.println(String.format("%s%,d task items in %.1fs, %,.0f task items/s",
+                    done ? "Done: " : "", items, seconds, seconds > 0 ? items / seconds : 0.0));
+        });
+
+        System.out.println("Copying " + source + " (" + from + ") to " + target + " (" + to + ")");
+        try {
+            transfer.run();
+        } catch (Exception e) {
+            System.err.println("Couldn't copy the task items: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static TaskTransfer.Format formatOf(String name) {
+        try {
+            return TaskTransfer.Format.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format " + name);
+        }
+    }
+}
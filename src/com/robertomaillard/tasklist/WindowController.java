@@ -1,12 +1,23 @@
 package com.robertomaillard.tasklist;
 
+import com.robertomaillard.tasklist.datamodel.PagedTaskList;
+import com.robertomaillard.tasklist.datamodel.TaskBatch;
+import com.robertomaillard.tasklist.datamodel.TaskConflict;
+import com.robertomaillard.tasklist.datamodel.TaskConflictException;
 import com.robertomaillard.tasklist.datamodel.TaskData;
 import com.robertomaillard.tasklist.datamodel.TaskItem;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.beans.value.WeakChangeListener;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -17,12 +28,17 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.paint.Color;
 import javafx.util.Callback;
+import javafx.util.Duration;
 
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 
 /**
@@ -50,11 +66,44 @@ public class WindowController {
     @FXML
     private ToggleButton filterToggleButton;
 
+    @FXML
+    private TextField searchTextField;
+
+    @FXML
+    private ComboBox<String> taskListComboBox;
+
+    @FXML
+    private ProgressIndicator loadProgressIndicator;
+
+    @FXML
+    private Button newItemButton;
+
+//    FALSE UNTIL THE BACKGROUND LOAD SUCCEEDS. UNTIL THEN THERE IS NO DATA SOURCE TO SAVE A CHANGE TO,
+//    SO EVERY WAY OF CHANGING THE TASK LIST IS OFF
+    private final BooleanProperty loaded = new SimpleBooleanProperty(false);
+
 
     private FilteredList<TaskItem> filteredList;
 
+//    SET INSTEAD OF filteredList WHEN DB TASK ITEMS ARE LOADED PAGE BY PAGE
+    private PagedTaskList pagedList;
+
     private Predicate<TaskItem> wantAllItems;
     private Predicate<TaskItem> wantTodaysItems;
+    private Predicate<TaskItem> wantSearchedItems;
+
+//    ROWS ABOVE AND BELOW THE SELECTED ONE WHOSE DETAILS ARE FETCHED AHEAD WHEN THEY ARE LEFT IN THE DATABASE
+    private static final int PREFETCH_ROWS = 8;
+
+//    A DATABASE SEARCH WAITS FOR THE TYPING TO PAUSE THIS LONG, THEN RUNS ON THE SEARCH THREAD. ONLY THE RESULT
+//    OF THE LAST SEARCH STARTED IS SHOWN
+    private static final int SEARCH_DELAY_MILLIS = 150;
+    private final PauseTransition searchPause = new PauseTransition(Duration.millis(SEARCH_DELAY_MILLIS));
+    private ExecutorService searchExecutor;
+    private long searchGeneration;
+
+//    WORKS OUT TODAY ONCE AND MOVES IT ON AT MIDNIGHT. THE CELLS AND THE DUE TODAY FILTER USE IT
+    private final DeadlineBucketService deadlineBuckets = new DeadlineBucketService();
 
     public void initialize() {
 
@@ -66,54 +115,81 @@ public class WindowController {
                 return true;
             }
         };
+        wantSearchedItems = wantAllItems;
 
-        // CREATES A PREDICATE TO PASS TO FilteredList
-        wantTodaysItems = new Predicate<TaskItem>() {
-            @Override
-            public boolean test(TaskItem todoItem) {
-                // LETS ONLY DEADLINE TODAY PASS
-                return (todoItem.getDeadline().equals(LocalDate.now()));
+//        STARTS WAITING FOR MIDNIGHT. A NEW DAY MOVES THE DUE TODAY FILTER ON WITH IT
+        deadlineBuckets.start();
+        deadlineBuckets.todayProperty().addListener((observable, oldDay, newDay) -> {
+            if (filterToggleButton.isSelected()) {
+                handleFilterButton();
             }
-        };
+        });
 
-//        RETRIEVES AN ObservableList POPULATED WITH TASK ITEMS FROM THE DATABASE
+//        REPORTS SAVES THAT FAILED ON THE WRITER THREAD BACK ON THE JavaFX APPLICATION THREAD.
+//        CHANGES ANOTHER PROGRAM SAVED FIRST REPLACE THE ONES MADE HERE
+        TaskData.getInstance().setPersistenceErrorHandler(e -> Platform.runLater(() -> {
+            if (e instanceof TaskConflictException) {
+                for (TaskConflict conflict : ((TaskConflictException) e).getConflicts()) {
+                    TaskData.getInstance().acceptConflict(conflict);
+                }
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Changed Elsewhere");
+                alert.setHeaderText("Another program changed the same task items first. Their version is kept");
+                alert.setContentText(e.getMessage());
+                alert.show();
+                return;
+            }
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Save Failed");
+            alert.setHeaderText("Couldn't save the latest task changes");
+            alert.setContentText(e.getMessage());
+            alert.show();
+        }));
+
+//        RETRIEVES THE ObservableList OF TASK ITEMS. loadTaskItems() FILLS IT AFTER THE WINDOW IS SHOWN
         ObservableList<TaskItem> taskItems = TaskData.getInstance().getTaskItems();
+        pagedList = TaskData.getInstance().getPagedTaskItems();
 
-//        IF TASKLIST IS EMPTY. ADD SOME INFORMATIVE INITIAL TASK ITEMS
-        if(taskItems.isEmpty()) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-            TaskItem previousTask =
-                    new TaskItem("Previous task",
-                            "Previous task are marked in light gray", LocalDate.parse("01-01-2019", formatter));
-            TaskItem todaysTask = new TaskItem("Today's task",
-                    "Today's task are marked in light gray", LocalDate.now());
-            TaskItem tomorrowsTask = new TaskItem("Tomorrow's task",
-                    "Tomorrow's task are marked in orange", LocalDate.now().plusDays(1));
-            TaskItem futureTask = new TaskItem("Future task",
-                    "Future task is not marked", LocalDate.parse("01-01-2029", formatter));
-
-            TaskData.getInstance().addTaskItem(previousTask);
-            TaskData.getInstance().addTaskItem(todaysTask);
-            TaskData.getInstance().addTaskItem(tomorrowsTask);
-            TaskData.getInstance().addTaskItem(futureTask);
-        }
-
-//        WRAPS THE ObservableList AND FILTER'S IT'S CONTENT USING THE PROVIDED PREDICATE
-        filteredList = new FilteredList<TaskItem>(taskItems, wantAllItems);
-
-//        WRAPS A FilteredList AND SORT'S IT'S CONTENT BY IMPLEMENTING COMPARATOR COMPARE METHOD
-        SortedList<TaskItem> sortedList = new SortedList<TaskItem>(filteredList,
-                new Comparator<TaskItem>() {
-                    @Override
-                    public int compare(TaskItem o1, TaskItem o2) {
+        if (pagedList == null) {
+//            WRAPS THE ObservableList AND FILTER'S IT'S CONTENT USING THE PROVIDED PREDICATE
+            filteredList = new FilteredList<TaskItem>(taskItems, wantAllItems);
 
-//                        COMPARES TaskItem object 1 TO TodoItem object 2
-                        return o1.getDeadline().compareTo(o2.getDeadline());
-                    }
-                });
+//            WRAPS A FilteredList AND SORT'S IT'S CONTENT BY IMPLEMENTING COMPARATOR COMPARE METHOD
+            SortedList<TaskItem> sortedList = new SortedList<TaskItem>(filteredList,
+                    new Comparator<TaskItem>() {
+                        @Override
+                        public int compare(TaskItem o1, TaskItem o2) {
+
+//                            COMPARES TaskItem object 1 TO TodoItem object 2
+                            return Integer.compare(o1.getDeadlineEpochDay(), o2.getDeadlineEpochDay());
+                        }
+                    });
 
-//        POPULATES THE FXML ListView WITH THE SortedList
-        taskListView.setItems(sortedList);
+//            POPULATES THE FXML ListView WITH THE SortedList
+            taskListView.setItems(sortedList);
+        } else {
+//            THE PAGED LIST IS ALREADY SORTED BY DEADLINE AND FILTERS ITSELF. WRAPPING IT WOULD READ EVERY PAGE
+            taskListView.setItems(pagedList);
+        }
+
+//        SEARCHES AS THE USER TYPES
+        searchTextField.textProperty().addListener((observable, oldText, newText) -> handleSearch());
+
+        if (pagedList == null) {
+//            A SEARCH RESULT IS WORKED OUT ONCE, SO IT IS SEARCHED AGAIN WHEN TASK ITEMS ARE ADDED OR EDITED.
+//            LATER, SO THE SEARCH INDEX HAS SEEN THE CHANGE FIRST
+            taskItems.addListener((ListChangeListener<TaskItem>) change -> {
+                if (searchTextField.getText().isBlank()) {
+                    return;
+                }
+                while (change.next()) {
+                    if (change.wasAdded()) {
+                        Platform.runLater(this::handleSearch);
+                        return;
+                    }
+                }
+            });
+        }
 
 //        ADDS A ChangeListener TO THE ListView LIST
         taskListView.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<TaskItem>() {
@@ -130,6 +206,8 @@ public class WindowController {
                     // FORMATS DATE
                     DateTimeFormatter df = DateTimeFormatter.ofPattern("cccc d MMMM, yyyy");
                     deadLineLabel.setText(df.format(item.getDeadline()));
+
+                    prefetchNeighbourDetails();
                 }
             }
         });
@@ -137,20 +215,16 @@ public class WindowController {
 //        SETS SELECTION MODE TO SINGLE
         taskListView.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
 
-//        ITERATE THROUGH SortedList TO SELECT APPROPRIATE TASK ITEM
-        for(TaskItem taskItem : sortedList) {
-            if (taskItem.getDeadline().equals(LocalDate.now())) {
-                taskListView.getSelectionModel().select(taskItem);
-                break;
-            } else if(taskItem.getDeadline().isAfter(LocalDate.now())) {
-                taskListView.getSelectionModel().select(taskItem);
-                break;
-            } else {
-                //SELECT'S THE FIRST INDEX
-                taskListView.getSelectionModel().selectFirst();
-            }
+        if (!taskListView.getItems().isEmpty()) {
+            selectFirstDueItem();
         }
 
+//        LISTS THE TASK LISTS TO SWITCH BETWEEN
+        showTaskListNames();
+
+//        APPLIES CHANGES OTHER PROGRAMS MAKE TO THE DATA SOURCE ON THE JavaFX APPLICATION THREAD
+        TaskData.getInstance().startWatching(change -> Platform.runLater(() -> applyKeepingSelection(change)));
+
 //        CONTEXT MENU HANDLER
         listContextMenu = new ContextMenu();
 
@@ -177,31 +251,70 @@ public class WindowController {
         // POPULATES FXML LISTVIEW CONTEXT MENU
         listContextMenu.getItems().addAll(deleteMenuItem,editMenuItem);
 
+//        NO CHANGES, AND NO SWITCHING TASK LIST, UNTIL THE TASK LIST IS LOADED
+        newItemButton.disableProperty().bind(loaded.not());
+        deleteMenuItem.disableProperty().bind(loaded.not());
+        editMenuItem.disableProperty().bind(loaded.not());
+        taskListComboBox.disableProperty().bind(loaded.not());
+
 //        SETS A CellFactory
         taskListView.setCellFactory(new Callback<ListView<TaskItem>, ListCell<TaskItem>>() {
             @Override
             public ListCell<TaskItem> call(ListView<TaskItem> taskItemListView) {
                 ListCell<TaskItem> cell = new ListCell<>() {
 
-                    // UPDATES ListView CELL COLORS
+                    // BUCKET THE TEXT COLOR IS SET FOR. NULL WHILE THE CELL IS EMPTY
+                    private DeadlineBucketService.Bucket paintedBucket;
+
+                    // AT MIDNIGHT ONLY THE CELLS WHOSE TASK ITEM CHANGED BUCKET ARE REPAINTED.
+                    // HELD HERE AND REGISTERED WEAKLY, SO A CELL THE ListView DROPS CAN BE COLLECTED
+                    private final ChangeListener<LocalDate> midnightListener = (observable, oldDay, newDay) -> {
+                        TaskItem taskItem = getItem();
+                        if (!isEmpty() && taskItem != null) {
+                            paint(deadlineBuckets.bucketOf(taskItem.getDeadline()));
+                        }
+                    };
+
+                    {
+                        deadlineBuckets.todayProperty().addListener(new WeakChangeListener<>(midnightListener));
+                    }
+
+                    // UPDATES ListView CELL COLORS. A TASK ITEM KEEPS ITS TEXT ONCE SHOWN, SO SCROLLING CREATES NO GARBAGE
                     @Override
                     protected void updateItem(TaskItem taskItem, boolean b) {
                         super.updateItem(taskItem, b);
-                        if (b) {
+                        if (b || taskItem == null) {
                             setText(null);
+                            paintedBucket = null;
                         } else {
                             setText(taskItem.getShortDescription());
-                            if (taskItem.getDeadline().isBefore(LocalDate.now())) {
+                            paint(deadlineBuckets.bucketOf(taskItem.getDeadline()));
+                        }
+                    }
+
+                    // SETS THE TEXT COLOR OF THE BUCKET UNLESS IT IS SET ALREADY
+                    private void paint(DeadlineBucketService.Bucket bucket) {
+                        if (bucket == paintedBucket) {
+                            return;
+                        }
+                        paintedBucket = bucket;
+                        switch (bucket) {
+                            case PAST:
                                 // UPDATES PAST DATE'S CELL COLOR TO GREY
                                 setTextFill(Color.GRAY);
-                            }
-                            else if (taskItem.getDeadline().equals(LocalDate.now())) {
+                                break;
+                            case TODAY:
                                 // UPDATES TODAY'S DUE DATE CELL'S COLOR TO RED
                                 setTextFill(Color.RED);
-                            } else if (taskItem.getDeadline().equals(LocalDate.now().plusDays(1))) {
+                                break;
+                            case TOMORROW:
                                 // UPDATES TOMORROW'S DUE DATE CELL'S COLOR TO ORANGE
                                 setTextFill(Color.ORANGE);
-                            }
+                                break;
+                            case FUTURE:
+                                // A REUSED CELL MUST NOT KEEP THE COLOR OF ITS PREVIOUS TASK ITEM
+                                setTextFill(Color.BLACK);
+                                break;
                         }
                     }
                 };
@@ -249,23 +362,268 @@ public class WindowController {
         if (result.isPresent() && result.get() == ButtonType.OK) {
             TaskDialogController controller = fxmlLoader.getController();
             TaskItem newItem = controller.processResult();
-            taskListView.getSelectionModel().select(newItem);
+            selectItem(newItem);
         }
     }
 
 //    FILTER TODAY'S DUE DATE ITEM'S BY SETTING APPROPRIATE PREDICATE
     @FXML
     public void handleFilterButton() {
+        if (pagedList != null) {
+            pagedList.setDeadlineFilter(filterToggleButton.isSelected() ? deadlineBuckets.getToday() : null);
+            return;
+        }
+
         if(filterToggleButton.isSelected()) {
-            filteredList.setPredicate(wantTodaysItems);
+            // LETS ONLY DEADLINE TODAY PASS. TODAY IS WORKED OUT ONCE, WHEN THE DAY CHANGES, AND EACH ITEM ONLY
+            // COMPARES ITS EPOCH DAY, SO THE FilteredList RECHECKS AN ADDED OR EDITED ITEM ALONE
+            long today = deadlineBuckets.getToday().toEpochDay();
+            wantTodaysItems = todoItem -> todoItem.getDeadlineEpochDay() == today;
+        }
+        applyPredicates();
+    }
+
+//    SHOWS THE TASK ITEMS CONTAINING EVERY WORD OF THE SEARCH TEXT. THE INDEX IS SEARCHED, NOT EVERY ITEM
+    private void handleSearch() {
+        if (pagedList != null) {
+            pagedList.setSearchFilter(searchTextField.getText());
+            return;
+        }
+
+        String query = searchTextField.getText();
+        if (!query.isBlank() && TaskData.getInstance().isSearchInDatabase()) {
+            searchPause.setOnFinished(event -> searchInBackground(query));
+            searchPause.playFromStart();
+            return;
+        }
+
+        // THE IN-MEMORY INDEX ANSWERS AT ONCE. A DATABASE SEARCH STILL RUNNING IS DROPPED
+        searchPause.stop();
+        searchGeneration++;
+        wantSearchedItems = query.isBlank() ? wantAllItems : TaskData.getInstance().getSearchPredicate(query);
+        applyPredicates();
+    }
+
+    private void searchInBackground(String query) {
+        if (searchExecutor == null) {
+            searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TaskList search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        long generation = ++searchGeneration;
+        searchExecutor.execute(() -> {
+            Predicate<TaskItem> predicate = TaskData.getInstance().getSearchPredicate(query);
+            Platform.runLater(() -> {
+                if (generation == searchGeneration) {
+                    wantSearchedItems = predicate;
+                    applyPredicates();
+                }
+            });
+        });
+    }
+
+//    COMBINES THE DUE TODAY FILTER WITH THE SEARCH
+    private void applyPredicates() {
+        Predicate<TaskItem> predicate = filterToggleButton.isSelected() ? wantTodaysItems : wantAllItems;
+        filteredList.setPredicate(wantSearchedItems == wantAllItems ? predicate : predicate.and(wantSearchedItems));
+    }
+
+//    LOADS THE DATA SOURCE ON A BACKGROUND THREAD WHILE THE WINDOW IS UP. THE TASK ITEMS DUE FROM TODAY ON ARRIVE
+//    FIRST, AND THE FIRST ONE DUE IS SELECTED AS SOON AS IT IS ON THE LIST. THE REST STREAMS IN BEHIND IT
+//    RETURNS THE RUNNING LOAD, SO THE CALLER CAN WAIT FOR IT TOO
+    public Task<Void> loadTaskItems(TaskData.DataSource dataSource) {
+        LocalDate today = deadlineBuckets.getToday();
+        Task<Void> loader = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                TaskData.getInstance().loadTaskItemsInBackground(dataSource, today,
+                        change -> Platform.runLater(() -> applyKeepingSelection(change)),
+                        (items, total) -> {
+                            updateProgress(items, total);
+                            // CALLED ON THE JavaFX APPLICATION THREAD, RIGHT AFTER THE BATCH IS ON THE LIST
+                            if (taskListView.getSelectionModel().isEmpty()
+                                    && TaskData.getInstance().getFirstTaskItemOnOrAfter(today) != null) {
+                                selectFirstDueItem();
+                            }
+                        });
+                return null;
+            }
+        };
+        loader.setOnSucceeded(event -> finishLoading());
+        // THE TASK ITEMS READ STAY ON SHOW, BUT CAN'T BE CHANGED
+        loader.setOnFailed(event -> {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.initOwner(mainBorderPane.getScene().getWindow());
+            alert.setTitle("Load Failed");
+            alert.setHeaderText("Couldn't load the task list. It can't be changed until the program is restarted");
+            alert.setContentText(loader.getException().getMessage());
+            alert.show();
+        });
+
+        loadProgressIndicator.progressProperty().bind(loader.progressProperty());
+        loadProgressIndicator.visibleProperty().bind(loader.runningProperty());
+
+        Thread thread = new Thread(loader, "TaskList loader");
+        thread.setDaemon(true);
+        thread.start();
+        return loader;
+    }
+
+//    RUNS ON THE JavaFX APPLICATION THREAD ONCE EVERY BATCH IS ON THE LIST
+    private void finishLoading() {
+        // THE PAGED VIEW EXISTS ONCE THE DATABASE IS OPEN
+        if (TaskData.getInstance().getPagedTaskItems() != null) {
+            pagedList = TaskData.getInstance().getPagedTaskItems();
+            taskListView.setItems(pagedList);
+            handleFilterButton();
+            handleSearch();
+        }
+
+        loaded.set(true);
+        if (taskListView.getItems().isEmpty()) {
+            addInitialTaskItems();
+        }
+        if (taskListView.getSelectionModel().isEmpty()) {
+            selectFirstDueItem();
+        }
+    }
+
+//    ADDS SOME INFORMATIVE INITIAL TASK ITEMS TO AN EMPTY TASK LIST
+    private void addInitialTaskItems() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+        TaskItem previousTask =
+                new TaskItem("Previous task",
+                        "Previous task are marked in light gray", LocalDate.parse("01-01-2019", formatter));
+        TaskItem todaysTask = new TaskItem("Today's task",
+                "Today's task are marked in light gray", LocalDate.now());
+        TaskItem tomorrowsTask = new TaskItem("Tomorrow's task",
+                "Tomorrow's task are marked in orange", LocalDate.now().plusDays(1));
+        TaskItem futureTask = new TaskItem("Future task",
+                "Future task is not marked", LocalDate.parse("01-01-2029", formatter));
+
+        // ADDS THE INITIAL TASK ITEMS IN ONE BATCH
+        TaskData.getInstance().addTaskItems(List.of(previousTask, todaysTask, tomorrowsTask, futureTask));
+    }
+
+//    SELECTS THE FIRST TASK ITEM DUE TODAY OR LATER
+    private void selectFirstDueItem() {
+        if (pagedList == null) {
+//            LOOKS UP THE FIRST TASK ITEM DUE TODAY OR LATER IN THE DEADLINE INDEX
+            TaskItem firstItem = TaskData.getInstance().getFirstTaskItemOnOrAfter(deadlineBuckets.getToday());
+            if (firstItem != null) {
+                taskListView.getSelectionModel().select(firstItem);
+            } else {
+                //SELECT'S THE FIRST INDEX
+                taskListView.getSelectionModel().selectFirst();
+            }
         } else {
-            filteredList.setPredicate(wantAllItems);
+//            ASKS THE DATABASE FOR THE FIRST TASK ITEM DUE TODAY OR LATER
+            int index = pagedList.indexOfFirstOnOrAfter(deadlineBuckets.getToday());
+            if (index >= 0) {
+                taskListView.getSelectionModel().select(index);
+                taskListView.scrollTo(index);
+            } else {
+                taskListView.getSelectionModel().selectFirst();
+            }
+        }
+    }
+
+//    FETCHES THE DETAILS OF THE ROWS AROUND THE SELECTED ONE IN THE BACKGROUND, SO THE NEXT ONES SELECTED SHOW AT ONCE
+    private void prefetchNeighbourDetails() {
+        if (!TaskData.getInstance().isLazyDetails()) {
+            return;
+        }
+        int index = taskListView.getSelectionModel().getSelectedIndex();
+        List<TaskItem> items = taskListView.getItems();
+        int from = Math.max(0, index - PREFETCH_ROWS);
+        int to = Math.min(items.size(), index + PREFETCH_ROWS + 1);
+        if (from < to) {
+            TaskData.getInstance().prefetchDetails(new ArrayList<>(items.subList(from, to)));
+        }
+    }
+
+//    SWITCHES TO THE TASK LIST PICKED OR TYPED. A NEW NAME CREATES A TASK LIST
+    @FXML
+    public void handleTaskListSwitch() {
+        String name = taskListComboBox.getValue() == null ? "" : taskListComboBox.getValue().trim();
+        if (name.isEmpty() || name.equalsIgnoreCase(TaskData.getInstance().getTaskListName())) {
+            return;
+        }
+
+        try {
+            TaskData.getInstance().switchTaskList(name);
+        } catch (IllegalArgumentException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Task List");
+            alert.setHeaderText("Couldn't switch to task list " + name);
+            alert.setContentText(e.getMessage());
+            alert.show();
+            showTaskListNames();
+            return;
+        }
+
+        // EVERY TASK LIST GETS A PAGED VIEW OF ITS OWN. THE ObservableList IS THE SAME ONE, REFILLED
+        if (pagedList != null) {
+            pagedList = TaskData.getInstance().getPagedTaskItems();
+            taskListView.setItems(pagedList);
+            handleFilterButton();
+        }
+        handleSearch();
+        selectFirstDueItem();
+        showTaskListNames();
+    }
+
+    private void showTaskListNames() {
+        taskListComboBox.getItems().setAll(TaskData.getInstance().getTaskListNames());
+        taskListComboBox.setValue(TaskData.getInstance().getTaskListName());
+    }
+
+//    SELECTS A TASK ITEM. THE PAGED LIST LOOKS UP ITS POSITION INSTEAD OF SCANNING EVERY ROW
+    private void selectItem(TaskItem item) {
+        if (pagedList == null) {
+            taskListView.getSelectionModel().select(item);
+            return;
+        }
+
+        int index = pagedList.indexOf(item);
+        if (index >= 0) {
+            taskListView.getSelectionModel().select(index);
+            taskListView.scrollTo(index);
+        }
+    }
+
+//    APPLIES A CHANGE MADE BY ANOTHER PROGRAM. A SELECTED TASK ITEM THAT WAS REPLACED BY ITS NEW VERSION,
+//    OR LOST ITS SELECTION TO A REPLACED LIST, IS SELECTED AGAIN BY ID
+    private void applyKeepingSelection(Runnable change) {
+        TaskItem selected = taskListView.getSelectionModel().getSelectedItem();
+        change.run();
+        if (selected == null || taskListView.getSelectionModel().getSelectedItem() == selected) {
+            return;
+        }
+
+        if (pagedList != null) {
+            int index = pagedList.indexOf(selected);
+            if (index >= 0) {
+                taskListView.getSelectionModel().select(index);
+            }
+            return;
+        }
+        for (TaskItem item : taskListView.getItems()) {
+            if (item.getId() == selected.getId()) {
+                taskListView.getSelectionModel().select(item);
+                return;
+            }
         }
     }
 
 //    HANDLES PRESSED KEY WHILE TASK ITEM SELECTED
     @FXML
     public void handleKeyPressed(KeyEvent keyEvent) {
+        if (!loaded.get()) {
+            return;
+        }
         TaskItem selectedItem = taskListView.getSelectionModel().getSelectedItem();
 
         // DELETE ITEMS FROM ITEMS LIST BY PRESSING DELETE KEY
@@ -274,6 +632,32 @@ public class WindowController {
                 deleteItem(selectedItem);
             }
         }
+
+        // UNDO WITH CTRL+Z AND REDO WITH CTRL+Y, OR CMD ON MACOS
+        if(keyEvent.isShortcutDown()) {
+            if(keyEvent.getCode().equals(KeyCode.Z)) {
+                selectChanged(TaskData.getInstance().undo());
+                keyEvent.consume();
+            } else if(keyEvent.getCode().equals(KeyCode.Y)) {
+                selectChanged(TaskData.getInstance().redo());
+                keyEvent.consume();
+            }
+        }
+    }
+
+//    SELECTS THE LAST TASK ITEM AN UNDO OR A REDO ADDED OR CHANGED. ONE THAT ONLY DELETED SELECTS THE FIRST DUE ITEM
+    private void selectChanged(TaskBatch batch) {
+        if (batch == null) {
+            return;
+        }
+        List<TaskBatch.Operation> operations = batch.getOperations();
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            if (operations.get(i).getNewItem() != null) {
+                selectItem(operations.get(i).getNewItem());
+                return;
+            }
+        }
+        selectFirstDueItem();
     }
 
 //    DELETE ITEMS FROM ITEMS LIST BY RIGHT CLICK
@@ -316,7 +700,43 @@ public class WindowController {
 
         Optional<ButtonType> result = dialog.showAndWait();
         if(result.isPresent() && result.get() == ButtonType.OK) {
-            controller.modifyItem(item);
+            // ANOTHER PROGRAM MAY HAVE CHANGED THE TASK ITEM WHILE THE DIALOG WAS OPEN
+            TaskConflict conflict = TaskData.getInstance().findConflict(item);
+            if (conflict == null) {
+                controller.modifyItem(item);
+            } else {
+                resolveConflict(conflict, controller);
+            }
+        }
+    }
+
+//    ASKS WHETHER TO SAVE THE EDIT OVER THE VERSION ANOTHER PROGRAM SAVED OR TO KEEP THEIRS
+    private void resolveConflict(TaskConflict conflict, TaskDialogController controller) {
+        ButtonType saveMine = new ButtonType("Save Mine", ButtonBar.ButtonData.YES);
+        ButtonType keepTheirs = new ButtonType("Keep Theirs", ButtonBar.ButtonData.NO);
+
+        Alert alert = new Alert(Alert.AlertType.WARNING, null, saveMine, keepTheirs);
+        alert.initOwner(mainBorderPane.getScene().getWindow());
+        alert.setTitle("Changed Elsewhere");
+        if (conflict.isDeleted()) {
+            alert.setHeaderText("Another program deleted this task item while you were editing it");
+            alert.setContentText("Save Mine adds your version back. Keep Theirs leaves it deleted.");
+        } else {
+            TaskItem stored = conflict.getStoredItem();
+            alert.setHeaderText("Another program changed this task item while you were editing it");
+            alert.setContentText("Their version: " + stored.getShortDescription() + ", due "
+                    + stored.getDeadline().format(DateTimeFormatter.ofPattern("cccc d MMMM, yyyy")) + "\n\n"
+                    + stored.getDetails());
+        }
+
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isPresent() && result.get() == saveMine) {
+            controller.overwriteItem(conflict);
+        } else if (result.isPresent() && result.get() == keepTheirs) {
+            TaskData.getInstance().acceptConflict(conflict);
+            if (!conflict.isDeleted()) {
+                selectItem(conflict.getStoredItem());
+            }
         }
     }
 
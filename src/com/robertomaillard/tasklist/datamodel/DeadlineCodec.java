@@ -0,0 +1,65 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Hand-rolled dd-MM-yyyy deadline decoder and encoder for the XML file and its journal.
+ * Reads the digits straight from the text instead of going through DateTimeFormatter,
+ * which is the main cost of loading a large file.
+ */
+
+final class DeadlineCodec {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private DeadlineCodec() {
+    }
+
+//    DECODES dd-MM-yyyy. ANY OTHER SHAPE GOES THROUGH THE FORMATTER, WHICH REPORTS THE ERROR
+    static LocalDate decode(CharSequence text) {
+        if (text.length() == 10 && text.charAt(2) == '-' && text.charAt(5) == '-') {
+            int day = digits(text, 0, 2);
+            int month = digits(text, 3, 5);
+            int year = digits(text, 6, 10);
+            if (day >= 0 && month >= 0 && year >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(text, FORMATTER);
+    }
+
+//    ENCODES AS dd-MM-yyyy
+    static String encode(LocalDate date) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return date.format(FORMATTER);
+        }
+        char[] chars = new char[10];
+        twoDigits(date.getDayOfMonth(), chars, 0);
+        chars[2] = '-';
+        twoDigits(date.getMonthValue(), chars, 3);
+        chars[5] = '-';
+        twoDigits(year / 100, chars, 6);
+        twoDigits(year % 100, chars, 8);
+        return new String(chars);
+    }
+
+//    RETURNS THE NUMBER WRITTEN IN THE RANGE, OR -1 IF A CHARACTER IS NOT A DIGIT
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void twoDigits(int value, char[] chars, int offset) {
+        chars[offset] = (char) ('0' + value / 10);
+        chars[offset + 1] = (char) ('0' + value % 10);
+    }
+}
@@ -0,0 +1,98 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram for TaskMetrics.
+ * Each power of two of nanoseconds is split into 8 buckets, so a percentile is read back within 12.5%
+ * from a fixed 4 KB of counters, whatever the number of samples. Any thread can record into it.
+ */
+
+class LatencyHistogram {
+
+//    BUCKETS PER POWER OF TWO, AS A POWER OF TWO
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+        record(nanos, 1);
+    }
+
+//    RECORDS SAMPLES OPERATIONS TAKING nanos BETWEEN THEM. A BATCH COUNTS AS ONE SAMPLE PER OPERATION
+    void record(long nanos, long samples) {
+        if (samples <= 0) {
+            return;
+        }
+        long each = Math.max(nanos / samples, 0);
+        buckets.addAndGet(bucketOf(each), samples);
+        count.add(samples);
+        totalNanos.add(Math.max(nanos, 0));
+        maxNanos.accumulate(each);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    long getMeanNanos() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / samples;
+    }
+
+//    RETURNS THE UPPER BOUND OF THE BUCKET HOLDING THE PERCENTILE, OR 0 WITHOUT SAMPLES
+    long getPercentileNanos(double percentile) {
+        long samples = count.sum();
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+//    VALUES BELOW SUB_BUCKETS GET A BUCKET EACH. LARGER ONES SHARE ONE OF THE 8 BUCKETS OF THEIR POWER OF TWO
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,342 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javafx.collections.ObservableListBase;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Lazily paged, deadline ordered view of the taskitems table for the ListView.
+ * Rows are fetched a page at a time with keyset pagination on (deadline, id) as the list is scrolled,
+ * and only the most recently used pages are kept in memory.
+ */
+
+public class PagedTaskList extends ObservableListBase<TaskItem> {
+
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_PAGES = 16;
+
+//    A PAGE THIS FAR PAST THE LAST KNOWN PAGE END IS FOUND WITH AN OFFSET SEEK INSTEAD OF WALKING FORWARD
+    private static final int MAX_WALK = 4;
+
+//    deadline IS STORED AS AN EPOCH DAY, SO THE COLUMN ITSELF SORTS IN DATE ORDER
+    static final String SORT_KEY = "deadline";
+    static final String CREATE_INDEX_STATEMENT =
+            "CREATE INDEX IF NOT EXISTS taskitems_deadline ON taskitems (deadline, id)";
+
+    private final TaskDatabase database;
+
+//    EPOCH DAY THE VIEW IS LIMITED TO. NULL SHOWS EVERY ROW
+    private Long deadlineFilter;
+
+//    FTS5 MATCH EXPRESSION THE VIEW IS LIMITED TO. NULL SHOWS EVERY ROW
+    private String searchFilter;
+
+    private int size;
+
+//    CACHED PAGES IN LEAST RECENTLY USED ORDER
+    private final Map<Integer, List<TaskItem>> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<TaskItem>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+//    SORT KEY OF THE LAST ROW OF EVERY PAGE READ SO FAR. THE NEXT PAGE STARTS AFTER IT
+    private final TreeMap<Integer, Key> pageEnds = new TreeMap<>();
+
+    private static class Key {
+        final long sortKey;
+        final long id;
+
+        Key(long sortKey, long id) {
+            this.sortKey = sortKey;
+            this.id = id;
+        }
+    }
+
+    PagedTaskList(TaskDatabase database) {
+        this.database = database;
+        this.size = count();
+    }
+
+    @Override
+    public TaskItem get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int page = index / PAGE_SIZE;
+        List<TaskItem> items = pages.get(page);
+        if (items == null) {
+            items = loadPage(page);
+        }
+        int offset = index - page * PAGE_SIZE;
+        if (offset < items.size()) {
+            return items.get(offset);
+        }
+
+        // ROWS WERE DELETED SINCE THEY WERE COUNTED. THE LIST SHRINKS TO THE ROWS THERE ARE, AND THE CALLER, WHO ASKED
+        // WITH THE OLD SIZE, GETS THE LAST ROW UNTIL THE CHANGE HAS IT LAY THE LIST OUT AGAIN
+        refresh();
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return get(Math.min(index, size - 1));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+//    FINDS THE POSITION OF A TASK ITEM BY ITS ID WITHOUT READING THE PAGES BEFORE IT
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof TaskItem)) {
+            return -1;
+        }
+        TaskItem taskItem = (TaskItem) o;
+
+        synchronized (database) {
+            try {
+                PreparedStatement select = database.prepare(
+                        "SELECT " + SORT_KEY + " FROM taskitems WHERE id=?" + filterClause(" AND "));
+                select.setLong(1, taskItem.getId());
+                bindFilter(select, 2);
+
+                long sortKey;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return -1;
+                    }
+                    sortKey = resultSet.getLong(1);
+                }
+
+                PreparedStatement countBefore = database.prepare(
+                        "SELECT COUNT(*) FROM taskitems WHERE " + keyBefore() + filterClause(" AND "));
+                countBefore.setLong(1, sortKey);
+                countBefore.setLong(2, sortKey);
+                countBefore.setLong(3, taskItem.getId());
+                bindFilter(countBefore, 4);
+                return queryInt(countBefore);
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't find task item position: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+//    RETURNS THE INDEX OF THE FIRST TASK ITEM DUE ON OR AFTER THE DATE, OR -1 IF THERE IS NONE
+    public int indexOfFirstOnOrAfter(LocalDate date) {
+        synchronized (database) {
+            try {
+                PreparedStatement countBefore = database.prepare(
+                        "SELECT COUNT(*) FROM taskitems WHERE " + SORT_KEY + " < ?" + filterClause(" AND "));
+                countBefore.setLong(1, date.toEpochDay());
+                bindFilter(countBefore, 2);
+                int index = queryInt(countBefore);
+                return index < size ? index : -1;
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't find task item position: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+//    LIMITS THE VIEW TO ONE DEADLINE. NULL SHOWS EVERY ROW AGAIN
+    public void setDeadlineFilter(LocalDate deadline) {
+        deadlineFilter = deadline == null ? null : deadline.toEpochDay();
+        refresh();
+    }
+
+//    LIMITS THE VIEW TO THE ROWS CONTAINING EVERY WORD OF THE QUERY, THE LAST ONE AS A PREFIX.
+//    A QUERY WITHOUT WORDS SHOWS EVERY ROW AGAIN
+    public void setSearchFilter(String query) {
+        searchFilter = TaskSearchIndex.matchExpression(query);
+        refresh();
+    }
+
+//    DROPS THE CACHED PAGES, RECOUNTS THE ROWS AND TELLS LISTENERS THAT EVERY ROW MAY HAVE CHANGED
+    public void refresh() {
+        int oldSize = size;
+        pages.clear();
+        pageEnds.clear();
+        size = count();
+
+        beginChange();
+        if (oldSize > 0) {
+            nextRemove(0, Collections.nCopies(oldSize, (TaskItem) null));
+        }
+        if (size > 0) {
+            nextAdd(0, size);
+        }
+        endChange();
+    }
+
+//    SHOWS AN EDIT IN THE LOADED PAGE THAT HOLDS THE TASK ITEM, BEFORE IT IS SAVED. THE NEXT refresh()
+//    MOVES IT TO ITS PLACE BY DEADLINE
+    void replace(TaskItem oldItem, TaskItem newItem) {
+        for (Map.Entry<Integer, List<TaskItem>> entry : pages.entrySet()) {
+            List<TaskItem> items = entry.getValue();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getId() == oldItem.getId()) {
+                    TaskItem replaced = items.set(i, newItem);
+                    beginChange();
+                    nextSet(entry.getKey() * PAGE_SIZE + i, replaced);
+                    endChange();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<TaskItem> loadPage(int page) {
+        Key after = null;
+
+        if (page > 0) {
+            after = pageEnds.get(page - 1);
+            if (after == null) {
+                Map.Entry<Integer, Key> known = pageEnds.lowerEntry(page - 1);
+                if (known != null && page - 1 - known.getKey() <= MAX_WALK) {
+                    // WALKS FORWARD FROM THE LAST KNOWN PAGE END
+                    for (int previous = known.getKey() + 1; previous < page; previous++) {
+                        if (!pages.containsKey(previous)) {
+                            loadPage(previous);
+                        }
+                    }
+                    after = pageEnds.get(page - 1);
+                } else {
+                    after = seekKey(page * PAGE_SIZE - 1);
+                }
+            }
+        }
+
+        List<TaskItem> items = queryPage(after);
+        pages.put(page, items);
+        if (!items.isEmpty()) {
+            TaskItem last = items.get(items.size() - 1);
+            pageEnds.put(page, new Key(last.getDeadlineEpochDay(), last.getId()));
+        }
+        return items;
+    }
+
+//    READS ONE PAGE OF ROWS AFTER THE KEY, OR FROM THE START WHEN THE KEY IS NULL
+    private List<TaskItem> queryPage(Key after) {
+        List<TaskItem> items = new ArrayList<>(PAGE_SIZE);
+
+        String where = after == null
+                ? filterClause(" WHERE ")
+                : " WHERE " + keyAfter() + filterClause(" AND ");
+
+        synchronized (database) {
+            try {
+                PreparedStatement select = database.prepare(
+                        "SELECT id, shortDescription, details, deadline, version FROM taskitems" + where +
+                                " ORDER BY " + SORT_KEY + ", id LIMIT " + PAGE_SIZE);
+                int parameter = 1;
+                if (after != null) {
+                    select.setLong(parameter++, after.sortKey);
+                    select.setLong(parameter++, after.sortKey);
+                    select.setLong(parameter++, after.id);
+                }
+                bindFilter(select, parameter);
+
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        items.add(TaskData.readDBTaskItem(resultSet));
+                    }
+                }
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't load a page of task items: " + e.getMessage());
+            }
+        }
+        return items;
+    }
+
+//    READS THE KEY OF THE ROW AT THE POSITION FROM THE (deadline, id) INDEX ALONE
+    private Key seekKey(int position) {
+        synchronized (database) {
+            try {
+                PreparedStatement seek = database.prepare(
+                        "SELECT " + SORT_KEY + ", id FROM taskitems" + filterClause(" WHERE ") +
+                                " ORDER BY " + SORT_KEY + ", id LIMIT 1 OFFSET ?");
+                int parameter = bindFilter(seek, 1);
+                seek.setInt(parameter, position);
+
+                try (ResultSet resultSet = seek.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new Key(resultSet.getLong(1), resultSet.getLong(2));
+                    }
+                }
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't seek to a page of task items: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private int count() {
+        synchronized (database) {
+            try {
+                PreparedStatement count = database.prepare("SELECT COUNT(*) FROM taskitems" + filterClause(" WHERE "));
+                bindFilter(count, 1);
+                return queryInt(count);
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't count task items: " + e.getMessage());
+                return 0;
+            }
+        }
+    }
+
+//    (deadline, id) > (?, ?) WRITTEN SO SQLITE SEEKS THE INDEX ON BOTH COLUMNS
+    private static String keyAfter() {
+        return SORT_KEY + " >= ? AND (" + SORT_KEY + " > ? OR id > ?)";
+    }
+
+//    (deadline, id) < (?, ?) WRITTEN SO SQLITE SEEKS THE INDEX
+    private static String keyBefore() {
+        return SORT_KEY + " <= ? AND (" + SORT_KEY + " < ? OR id < ?)";
+    }
+
+    private String filterClause(String prefix) {
+        List<String> conditions = new ArrayList<>(2);
+        if (deadlineFilter != null) {
+            conditions.add("deadline=?");
+        }
+        if (searchFilter != null) {
+            conditions.add("id IN (SELECT rowid FROM " + TaskData.SEARCH_TABLE + " WHERE " +
+                    TaskData.SEARCH_TABLE + " MATCH ?)");
+        }
+        return conditions.isEmpty() ? "" : prefix + String.join(" AND ", conditions);
+    }
+
+//    BINDS THE FILTER VALUES THERE ARE. RETURNS THE NEXT FREE PARAMETER INDEX
+    private int bindFilter(PreparedStatement statement, int parameter) throws SQLException {
+        if (deadlineFilter != null) {
+            statement.setLong(parameter++, deadlineFilter);
+        }
+        if (searchFilter != null) {
+            statement.setString(parameter++, searchFilter);
+        }
+        return parameter;
+    }
+
+    private static int queryInt(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+}
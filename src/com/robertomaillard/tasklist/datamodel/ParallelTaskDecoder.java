@@ -0,0 +1,73 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Decodes chunks of raw task records on a fork-join pool and merges the task items in chunk order.
+ * The readers split their input into chunks: XML task fragments, snapshot record ranges, or id or deadline ranges of rows.
+ */
+
+final class ParallelTaskDecoder {
+
+//    CHUNKS PER THREAD. MORE CHUNKS THAN THREADS EVENS OUT CHUNKS THAT DECODE SLOWER
+    static final int CHUNKS_PER_THREAD = 4;
+
+    interface ChunkDecoder<C> {
+        List<TaskItem> decode(C chunk) throws Exception;
+    }
+
+    private ParallelTaskDecoder() {
+    }
+
+//    DECODES EVERY CHUNK WITH THE GIVEN NUMBER OF THREADS. THE RESULT KEEPS THE ORDER OF THE CHUNKS
+    static <C> List<TaskItem> decode(List<C> chunks, int threads, ChunkDecoder<C> decoder) throws IOException {
+        List<List<TaskItem>> parts = new ArrayList<>(chunks.size());
+        int[] size = new int[1];
+        decode(chunks, threads, decoder, part -> {
+            parts.add(part);
+            size[0] += part.size();
+        });
+
+        List<TaskItem> items = new ArrayList<>(size[0]);
+        for (List<TaskItem> part : parts) {
+            items.addAll(part);
+        }
+        return items;
+    }
+
+//    DECODES EVERY CHUNK WITH THE GIVEN NUMBER OF THREADS AND HANDS THE TASK ITEMS OF EACH CHUNK TO THE CONSUMER,
+//    ON THE CALLING THREAD AND IN CHUNK ORDER, AS SOON AS THE CHUNK AND EVERY CHUNK BEFORE IT ARE DECODED
+    static <C> void decode(List<C> chunks, int threads, ChunkDecoder<C> decoder, Consumer<List<TaskItem>> consumer)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<List<TaskItem>>> decoded = new ArrayList<>(chunks.size());
+            for (C chunk : chunks) {
+                decoded.add(pool.submit(() -> decoder.decode(chunk)));
+            }
+            for (Future<List<TaskItem>> future : decoded) {
+                consumer.accept(future.get());
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding task items", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered group of task item adds, edits and deletes.
+ * TaskData.applyBatch() applies the whole batch in one SQLite transaction or one XML rewrite.
+ */
+
+public class TaskBatch {
+
+    public enum Type {
+        ADD,
+        EDIT,
+        DELETE
+    }
+
+//    ONE ADD, EDIT OR DELETE OF THE BATCH
+    public static class Operation {
+
+        private final Type type;
+        private final TaskItem oldItem;
+        private final TaskItem newItem;
+
+        private Operation(Type type, TaskItem oldItem, TaskItem newItem) {
+            this.type = type;
+            this.oldItem = oldItem;
+            this.newItem = newItem;
+        }
+
+        static Operation add(TaskItem taskItem) {
+            return new Operation(Type.ADD, null, taskItem);
+        }
+
+        static Operation edit(TaskItem oldItem, TaskItem newItem) {
+            return new Operation(Type.EDIT, oldItem, newItem);
+        }
+
+        static Operation delete(TaskItem taskItem) {
+            return new Operation(Type.DELETE, taskItem, null);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public TaskItem getOldItem() {
+            return oldItem;
+        }
+
+        public TaskItem getNewItem() {
+            return newItem;
+        }
+    }
+
+    private final List<Operation> operations;
+
+    public TaskBatch() {
+        operations = new ArrayList<>();
+    }
+
+    TaskBatch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    public TaskBatch add(TaskItem taskItem) {
+        operations.add(Operation.add(taskItem));
+        return this;
+    }
+
+    public TaskBatch edit(TaskItem oldItem, TaskItem newItem) {
+        operations.add(Operation.edit(oldItem, newItem));
+        return this;
+    }
+
+    public TaskBatch delete(TaskItem taskItem) {
+        operations.add(Operation.delete(taskItem));
+        return this;
+    }
+
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+//    RETURNS THE BATCH THAT REVERTS THIS ONE: THE OPERATIONS IN REVERSE ORDER, ADDS AS DELETES AND THE OTHER WAY ROUND,
+//    AND EDITS BACK TO THE OLD ITEM
+    TaskBatch inverse() {
+        List<Operation> inverse = new ArrayList<>(operations.size());
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            Operation operation = operations.get(i);
+            switch (operation.getType()) {
+                case ADD:
+                    inverse.add(Operation.delete(operation.getNewItem()));
+                    break;
+                case EDIT:
+                    inverse.add(Operation.edit(operation.getNewItem(), operation.getOldItem()));
+                    break;
+                case DELETE:
+                    inverse.add(Operation.add(operation.getOldItem()));
+                    break;
+            }
+        }
+        return new TaskBatch(inverse);
+    }
+
+//    RETURNS TRUE IF THE BATCH ONLY ADDS TASK ITEMS
+    boolean isAddOnly() {
+        for (Operation operation : operations) {
+            if (operation.getType() != Type.ADD) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,158 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming reader for task items as RFC 4180 CSV, the format TaskCSVWriter writes.
+ * Reads one record at a time from a fixed buffer, so memory stays the same whatever the size of the file.
+ * Quoted fields may hold commas, doubled quotes and line breaks. The header line is optional,
+ * and an empty id is read as 0, a task item still to be given one.
+ */
+
+class TaskCSVReader {
+
+    private static final int FIELDS = 4;
+
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+
+    private Reader reader;
+    private long line;
+
+//    PASSES EVERY TASK ITEM TO THE CONSUMER IN FILE ORDER. RETURNS THE NUMBER OF TASK ITEMS READ
+    long read(File csvFile, Consumer<TaskItem> consumer) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8)) {
+            this.reader = reader;
+            position = 0;
+            limit = 0;
+            line = 1;
+
+            List<String> fields = new ArrayList<>(FIELDS);
+            StringBuilder field = new StringBuilder();
+            long count = 0;
+            boolean first = true;
+
+            while (true) {
+                long recordLine = line;
+                if (!readRecord(fields, field)) {
+                    return count;
+                }
+                // A BLANK LINE HOLDS NO TASK ITEM
+                if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                    continue;
+                }
+                if (first) {
+                    first = false;
+                    if (String.join(",", fields).equals(TaskCSVWriter.HEADER)) {
+                        continue;
+                    }
+                }
+                consumer.accept(toTaskItem(fields, recordLine));
+                count++;
+            }
+        } finally {
+            reader = null;
+        }
+    }
+
+    private TaskItem toTaskItem(List<String> fields, long recordLine) throws IOException {
+        if (fields.size() != FIELDS) {
+            throw new IOException("Line " + recordLine + " has " + fields.size() + " fields instead of " + FIELDS);
+        }
+        try {
+            String id = fields.get(0).trim();
+            return new TaskItem(id.isEmpty() ? 0 : Long.parseLong(id), fields.get(1), fields.get(2),
+                    DeadlineCodec.decode(fields.get(3).trim()));
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IOException("Line " + recordLine + " isn't a task item: " + e.getMessage());
+        }
+    }
+
+//    READS THE FIELDS OF THE NEXT RECORD. RETURNS FALSE AT THE END OF THE FILE
+    private boolean readRecord(List<String> fields, StringBuilder field) throws IOException {
+        fields.clear();
+        field.setLength(0);
+
+        int c = next();
+        if (c < 0) {
+            return false;
+        }
+        boolean quoted = false;
+        boolean wasQuoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Line " + line + " ends inside a quoted field");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        next();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+
+            } else if (c < 0 || c == '\n' || c == '\r') {
+                // \r\n ENDS A RECORD ONCE
+                if (c == '\r' && peek() == '\n') {
+                    next();
+                }
+                if (c >= 0) {
+                    line++;
+                }
+                fields.add(field.toString());
+                return true;
+
+            } else {
+                field.append((char) c);
+            }
+            c = next();
+        }
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming writer for task items as RFC 4180 CSV.
+ * One header line, then id,shortDescription,details,deadline per task item with dd-MM-yyyy deadlines,
+ * the format TaskCSVReader reads back. A field holding a comma, quote or line break is quoted.
+ */
+
+class TaskCSVWriter implements Closeable {
+
+    static final String HEADER = "id,shortDescription,details,deadline";
+
+    private final OutputStream target;
+    private final Writer writer;
+
+//    OPENS THE STREAM AND WRITES THE HEADER LINE
+    TaskCSVWriter(OutputStream outputStream) throws IOException {
+        this.target = outputStream;
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+
+        writer.write(HEADER);
+        writer.write("\r\n");
+    }
+
+//    WRITES ONE RECORD
+    void write(TaskItem taskItem) throws IOException {
+        writer.write(Long.toString(taskItem.getId()));
+        writer.write(',');
+        writeField(taskItem.decodeShortDescription());
+        writer.write(',');
+        writeField(taskItem.getDetails());
+        writer.write(',');
+        writer.write(DeadlineCodec.encode(taskItem.getDeadline()));
+        writer.write("\r\n");
+    }
+
+//    FLUSHES THE STREAM. A FILE IS SYNCED TO DISK BEFORE IT IS CLOSED
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+        if (target instanceof FileOutputStream) {
+            ((FileOutputStream) target).getFD().sync();
+        }
+        writer.close();
+    }
+
+//    QUOTES THE FIELD ONLY IF IT NEEDS IT. A QUOTE INSIDE IS DOUBLED
+    private void writeField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
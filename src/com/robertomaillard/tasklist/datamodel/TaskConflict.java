@@ -0,0 +1,30 @@
+package com.robertomaillard.tasklist.datamodel;
+
+/**
+ * A task item another program changed or deleted in the database after it was read here.
+ * Holds the task item on the list and the row as the database holds it now, null if it was deleted.
+ */
+
+public class TaskConflict {
+
+    private final TaskItem taskItem;
+    private final TaskItem storedItem;
+
+    TaskConflict(TaskItem taskItem, TaskItem storedItem) {
+        this.taskItem = taskItem;
+        this.storedItem = storedItem;
+    }
+
+    public TaskItem getTaskItem() {
+        return taskItem;
+    }
+
+//    NULL IF THE OTHER PROGRAM DELETED THE TASK ITEM
+    public TaskItem getStoredItem() {
+        return storedItem;
+    }
+
+    public boolean isDeleted() {
+        return storedItem == null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Passed to the persistence error handler when changes weren't saved because another program changed or deleted
+ * the same rows first. The rest of the batch is saved. The database keeps the other program's version.
+ */
+
+public class TaskConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<TaskConflict> conflicts;
+
+    TaskConflictException(List<TaskConflict> conflicts) {
+        super(conflicts.size() + " task item changes weren't saved, another program changed the same task items first: "
+                + conflicts.stream().map(conflict -> conflict.getTaskItem().getShortDescription())
+                .collect(Collectors.joining(", ")));
+        this.conflicts = conflicts;
+    }
+
+    public List<TaskConflict> getConflicts() {
+        return conflicts;
+    }
+}
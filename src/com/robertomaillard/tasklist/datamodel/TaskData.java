@@ -1,461 +1,2286 @@
 package com.robertomaillard.tasklist.datamodel;
 
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
-import org.w3c.dom.*;
-
-import javax.xml.parsers.*;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 
 import java.sql.*;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Created by Roberto Maillard on 19/9/2019.
  * Task data singleton Class. Only one instance of this class at a time.
  */
 
-public class TaskData {
+public class TaskData {
+
+//    PRIVATE STATIC INSTANCE OF THIS CLASS
+    private static TaskData instance = new TaskData();
+
+//    THE TASK LIST STORED IN THE TaskListItems FILES. EVERY OTHER LIST HAS FILES OF ITS OWN
+    public static final String DEFAULT_TASK_LIST = "Default";
+
+//    IDLE TASK LISTS KEPT OPEN, AND HOW LONG ONE STAYS OPEN. SWITCHING BACK TO ONE OF THEM READS NOTHING
+    private static final int MAX_IDLE_TASK_LISTS = 3;
+    private static final long TASK_LIST_IDLE_MILLIS = 5 * 60 * 1000;
+
+//    CHANGES THAT CAN BE UNDONE
+    private static final int MAX_UNDO_STEPS = 100;
+
+//    FIRST AND LARGEST BATCH OF A BACKGROUND LOAD. EACH BATCH IS TWICE THE ONE BEFORE, SO THE FIRST IS ON THE LIST
+//    AT ONCE AND A SortedList RE-SORTS THE WHOLE LIST ONLY A FEW TIMES
+    private static final int FIRST_LOAD_BATCH = 1000;
+    private static final int MAX_LOAD_BATCH = 1 << 17;
+
+//    id IS AN INTEGER PRIMARY KEY. IT IS THE ROWID, SO LOOKUPS BY id USE THE TABLE'S B-TREE.
+//    deadline IS THE EPOCH DAY, SO IT SORTS AND COMPARES AS A NUMBER AND NEEDS NO PARSING.
+//    version GOES UP WITH EVERY EDIT MADE HERE. AN EDIT OR DELETE ONLY APPLIES TO THE VERSION IT WAS MADE ON,
+//    SO AN EDIT ANOTHER PROGRAM SAVED FIRST ISN'T OVERWRITTEN
+    static final String CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS taskitems " +
+            "(id INTEGER PRIMARY KEY, shortDescription TEXT, details TEXT, deadline INTEGER, " +
+            "version INTEGER NOT NULL DEFAULT 0)";
+    private static final String ADD_VERSION_COLUMN_STATEMENT =
+            "ALTER TABLE taskitems ADD COLUMN version INTEGER NOT NULL DEFAULT 0";
+    private static final String SELECT_TASKS_STATEMENT =
+            "SELECT id, shortDescription, details, deadline, version FROM taskitems";
+    private static final String SELECT_TASK_RANGE_STATEMENT = "SELECT id, shortDescription, details, deadline, version " +
+            "FROM taskitems WHERE id >= ? AND id < ? ORDER BY id";
+
+//    THE SAME ROWS WITHOUT THEIR DETAILS, USUALLY THE LARGEST COLUMN. A NULL details IS FETCHED WHEN IT IS SHOWN
+    private static final String SELECT_TASKS_WITHOUT_DETAILS_STATEMENT =
+            "SELECT id, shortDescription, NULL, deadline, version FROM taskitems";
+    private static final String SELECT_TASK_RANGE_WITHOUT_DETAILS_STATEMENT = "SELECT id, shortDescription, NULL, " +
+            "deadline, version FROM taskitems WHERE id >= ? AND id < ? ORDER BY id";
+    private static final String SELECT_DETAILS_STATEMENT = "SELECT details FROM taskitems WHERE id=?";
+    private static final String SELECT_ALL_DETAILS_STATEMENT = "SELECT id, details FROM taskitems";
+
+//    A BACKGROUND LOAD READS THE ROWS DUE FROM TODAY ON FIRST, THEN THE OLDER ONES, ALONG THE (deadline, id) INDEX
+    private static final String DUE_ON_OR_AFTER_CLAUSE = " WHERE deadline >= ? ORDER BY deadline, id";
+    private static final String DUE_BEFORE_CLAUSE = " WHERE deadline < ? ORDER BY deadline, id";
+    private static final String DUE_BETWEEN_CLAUSE = " WHERE deadline >= ? AND deadline < ? ORDER BY deadline, id";
+    private static final String DEADLINE_SPAN_STATEMENT = "SELECT MIN(deadline), MAX(deadline) FROM taskitems";
+
+//    DETAILS KEPT IN MEMORY WHEN THEY ARE LEFT IN THE DATABASE ON LOAD, AND HOW MANY ARE FETCHED PER QUERY
+    private static final int DETAILS_CACHE_SIZE = 1024;
+    private static final int DETAILS_BATCH_SIZE = 16;
+    private static final String SELECT_DETAILS_BATCH_STATEMENT = "SELECT id, details FROM taskitems WHERE id IN (" +
+            String.join(", ", Collections.nCopies(DETAILS_BATCH_SIZE, "?")) + ")";
+    static final String INSERT_TASK_STATEMENT =
+            "INSERT INTO taskitems (id, shortDescription, details, deadline) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_TASK_STATEMENT = "DELETE FROM taskitems WHERE id=? AND version=?";
+    private static final String EDIT_TASK_STATEMENT =
+            "UPDATE taskitems SET shortDescription=?, details=?, deadline=?, version=? WHERE id=? AND version=?";
+    private static final String SELECT_VERSION_STATEMENT = "SELECT version FROM taskitems WHERE id=?";
+    private static final String MAX_ID_STATEMENT = "SELECT MAX(id) FROM taskitems";
+
+//    REBUILDS A taskitems TABLE CREATED BEFORE TASK IDS OR WITH dd-MM-yyyy TEXT DEADLINES.
+//    THE OLD ROWIDS BECOME THE IDS AND THE TEXT DEADLINES BECOME EPOCH DAYS. THE OLD INDEXES GO WITH THE OLD TABLE
+    private static final String RENAME_OLD_TABLE_STATEMENT = "ALTER TABLE taskitems RENAME TO taskitems_old";
+    private static final String COPY_OLD_ROWS_STATEMENT =
+            "INSERT INTO taskitems (id, shortDescription, details, deadline) " +
+                    "SELECT rowid, shortDescription, details, %s FROM taskitems_old";
+    private static final String TEXT_DEADLINE_TO_EPOCH_DAY = "CAST(julianday(substr(deadline, 7, 4) || '-' || " +
+            "substr(deadline, 4, 2) || '-' || substr(deadline, 1, 2)) - 2440587.5 AS INTEGER)";
+    private static final String DROP_OLD_TABLE_STATEMENT = "DROP TABLE taskitems_old";
+
+//    FTS5 INDEX OF THE taskitems TEXT. IT STORES NO COPY OF THE TEXT, AND THE TRIGGERS KEEP IT CURRENT ON EVERY WRITE.
+//    THE 2 AND 3 LETTER PREFIX INDEXES ANSWER THE FIRST KEYSTROKES OF A WORD WITHOUT MERGING EVERY LONGER WORD
+    static final String SEARCH_TABLE = "taskitems_search";
+    private static final String[] CREATE_SEARCH_INDEX_STATEMENTS = {
+            "CREATE VIRTUAL TABLE IF NOT EXISTS taskitems_search USING fts5" +
+                    "(shortDescription, details, content='taskitems', content_rowid='id', prefix='2 3')",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_search_insert AFTER INSERT ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_search (rowid, shortDescription, details) " +
+                    "VALUES (new.id, new.shortDescription, new.details); END",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_search_delete AFTER DELETE ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_search (taskitems_search, rowid, shortDescription, details) " +
+                    "VALUES ('delete', old.id, old.shortDescription, old.details); END",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_search_update AFTER UPDATE ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_search (taskitems_search, rowid, shortDescription, details) " +
+                    "VALUES ('delete', old.id, old.shortDescription, old.details); " +
+                    "INSERT INTO taskitems_search (rowid, shortDescription, details) " +
+                    "VALUES (new.id, new.shortDescription, new.details); END"
+    };
+    private static final String REBUILD_SEARCH_INDEX_STATEMENT =
+            "INSERT INTO taskitems_search (taskitems_search) VALUES ('rebuild')";
+    private static final String SEARCH_TASKS_STATEMENT =
+            "SELECT rowid FROM taskitems_search WHERE taskitems_search MATCH ?";
+
+//    LOG OF THE IDS OF THE CHANGED ROWS. THE TRIGGERS LOG THE WRITES OF EVERY PROGRAM USING THE DATABASE,
+//    SO A CHANGE MADE ELSEWHERE IS PICKED UP BY READING THE LOGGED ROWS ONLY
+    private static final String[] CREATE_CHANGE_LOG_STATEMENTS = {
+            "CREATE TABLE IF NOT EXISTS taskitems_changes (seq INTEGER PRIMARY KEY AUTOINCREMENT, id INTEGER NOT NULL)",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_changes_insert AFTER INSERT ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_changes (id) VALUES (new.id); END",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_changes_delete AFTER DELETE ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_changes (id) VALUES (old.id); END",
+            "CREATE TRIGGER IF NOT EXISTS taskitems_changes_update AFTER UPDATE ON taskitems BEGIN " +
+                    "INSERT INTO taskitems_changes (id) VALUES (old.id); " +
+                    "INSERT INTO taskitems_changes (id) VALUES (new.id); END"
+    };
+    private static final String LAST_CHANGE_STATEMENT =
+            "SELECT seq FROM sqlite_sequence WHERE name='taskitems_changes'";
+    private static final String PRUNE_CHANGES_STATEMENT = "DELETE FROM taskitems_changes WHERE seq <= ?";
+//    CHANGE LOG ENTRIES KEPT BEHIND THE LAST ONE READ, FOR OTHER PROGRAMS STILL READING THEM
+    private static final int CHANGE_LOG_KEPT = 1000;
+    private static final String SELECT_CHANGES_STATEMENT =
+            "SELECT seq, id FROM taskitems_changes WHERE seq > ? ORDER BY seq";
+    private static final String FIRST_CHANGE_STATEMENT = "SELECT MIN(seq) FROM taskitems_changes";
+    private static final String SELECT_TASK_STATEMENT =
+            "SELECT id, shortDescription, details, deadline, version FROM taskitems WHERE id=?";
+
+//    CHANGES EVERY TIME ANOTHER CONNECTION COMMITS. WRITES MADE ON THIS CONNECTION LEAVE IT AS IT IS
+    private static final String DATA_VERSION_STATEMENT = "PRAGMA data_version";
+    private static final long DB_WATCH_INTERVAL_MILLIS = 500;
+
+//    WORKING DIRECTORY WHEN NULL
+    private File dataDirectory;
+
+//    THE TASK LIST ON SCREEN. database AND THE JOURNALS ARE ITS FILES
+    private TaskListShard taskList;
+
+//    TASK LISTS SWITCHED AWAY FROM, LEAST RECENTLY USED FIRST. CLOSED WHEN IDLE FOR TOO LONG OR TOO MANY
+    private final LinkedHashMap<String, TaskListShard> idleTaskLists = new LinkedHashMap<>();
+//    NAMES OF THE IDLE TASK LISTS BEING CLOSED. GUARDED BY idleTaskLists. A CLOSE MERGES THE XML JOURNAL INTO ITS FILE,
+//    SO THE LIST ISN'T OPENED AGAIN UNTIL IT IS DONE
+    private final Set<String> closingTaskLists = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private ScheduledExecutorService evictionExecutor;
+
+    private TaskDatabase database;
+
+//    THE SAME LIST FOR THE WHOLE SESSION. A RELOAD CHANGES ITS CONTENT, SO LISTENERS BOUND TO IT STAY ATTACHED
+    private final TaskItemList taskItems = new TaskItemList();
+
+    private TaskXMLJournal xmlJournal;
+    private TaskSnapshotJournal snapshotJournal;
+
+    private final TaskWriter writer = new TaskWriter(this::persist);
+
+//    LATENCIES AND COUNTERS OF EVERY LOAD, CHANGE AND SAVE
+    private final TaskMetrics metrics = new TaskMetrics();
+
+//    CHANGES MADE HERE TO THE TASK LIST ON SCREEN. CLEARED BY A LOAD, A SWITCH OF TASK LIST AND A CHANGE MADE ELSEWHERE,
+//    AS THEIR TASK ITEMS MAY NO LONGER BE ON THE LIST
+    private final TaskHistory history = new TaskHistory(MAX_UNDO_STEPS);
+
+//    LAST TASK ID HANDED OUT
+    private long lastId;
+
+//    TASK ITEMS BY DEADLINE. KEPT CURRENT BY LISTENING TO THE ObservableList
+    private final TaskDeadlineIndex deadlineIndex = new TaskDeadlineIndex();
+
+//    WORDS OF THE XML AND SNAPSHOT TASK ITEMS. BUILT ON THE FIRST SEARCH, SO A SESSION WITHOUT SEARCHES DOESN'T PAY FOR IT
+    private TaskSearchIndex searchIndex;
+
+//    WHEN SET, DB TASK ITEMS ARE LOADED WITHOUT THEIR DETAILS. THE LAST DETAILS SHOWN ARE CACHED, LEAST RECENTLY
+//    USED FIRST OUT. detailsGeneration CHANGES WITH THE CONTENT OF THE CACHE, SO A PREFETCH STARTED BEFORE A RELOAD
+//    OR A SWITCH OF TASK LIST DOESN'T FILL IT WITH DETAILS OF THE OLD ROWS
+    private boolean lazyDetails;
+    private final Map<Long, String> detailsCache = new LinkedHashMap<>(DETAILS_CACHE_SIZE * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > DETAILS_CACHE_SIZE;
+        }
+    };
+    private long detailsGeneration;
+    private ExecutorService prefetchExecutor;
+
+//    WHEN SET, DB TASK ITEMS ARE READ PAGE BY PAGE AS THE ListView SCROLLS INSTEAD OF ALL AT ONCE
+    private boolean pagedLoading;
+    private PagedTaskList pagedTaskItems;
+
+    public enum DataSource {
+        DB,
+        XML,
+        SNAPSHOT
+    }
+
+    /**
+     * Told how many task items a background load has put on the list and how many it reads in all,
+     * -1 until that is known. Called on the executor the batches are applied on.
+     */
+    public interface LoadProgress {
+        void loaded(long items, long total);
+    }
+
+    volatile DataSource dataSource;
+
+//    NOTICES CHANGES OTHER PROGRAMS MAKE TO THE DATA SOURCE. CHANGES ARE APPLIED TO THE LIST ON watchExecutor
+    private TaskSourceWatcher watcher;
+    private volatile Executor watchExecutor;
+
+//    TASK ITEMS SAVED UNDER ANOTHER ID THAN THE ONE HANDED OUT HERE, AS ANOTHER PROGRAM TOOK THAT ONE FIRST.
+//    ONLY USED ON THE WRITER THREAD, SO A LATER EDIT OR DELETE QUEUED UNDER THE OLD ID IS SAVED UNDER THE NEW ONE
+    private final Map<TaskItem, Long> reassignedIds = new IdentityHashMap<>();
+
+//    SET WHILE A RE-READ OF THE PAGED VIEW WAITS ON THE WATCH EXECUTOR
+    private final AtomicBoolean pagedRefreshQueued = new AtomicBoolean();
+
+//    THE XML OR SNAPSHOT TASK ITEMS AS LAST READ FROM DISK, SORTED BY ID. A NEW READ IS COMPARED WITH THEM,
+//    SO ONLY WHAT ANOTHER PROGRAM CHANGED REACHES THE LIST, NOT WHAT WAS EDITED HERE SINCE
+    private TaskItem[] watchedTaskItems;
+
+//    LAST PRAGMA data_version SEEN AND LAST taskitems_changes ENTRY APPLIED
+    private volatile long dataVersion;
+    private volatile long lastChangeSeq;
+
+//    COUNTS THE CHANGES MADE HERE. A DATABASE CHANGE READ WHILE ONE WAS MADE IS READ AGAIN INSTEAD OF APPLIED
+    private volatile long localChanges;
+
+//    THREADS EACH DATA SOURCE IS DECODED WITH ON LOAD. A DATA SOURCE THAT IS NOT LISTED LOADS ON THE CALLING THREAD
+    private final Map<DataSource, Integer> loadThreads = new EnumMap<>(DataSource.class);
+
+//    RETURNS AN INSTANCE OF THIS SINGLETON CLASS
+    public static TaskData getInstance() {
+        return instance;
+    }
+
+    private TaskData() {
+        useTaskList(openTaskList(DEFAULT_TASK_LIST));
+        taskItems.addListener(deadlineIndex);
+        TaskItem.setDetailsLoader(this::loadDetails);
+    }
+
+    public ObservableList<TaskItem> getTaskItems() {
+        return taskItems;
+    }
+
+//    LOAD, CHANGE AND SAVE LATENCIES AND COUNTERS. register() PUBLISHES THEM OVER JMX
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+//    READS AND WRITES THE DATA SOURCE FILES IN THE DIRECTORY INSTEAD OF THE WORKING DIRECTORY.
+//    SAVES AND CLOSES THE CURRENT FILES FIRST. TAKES EFFECT ON THE NEXT loadTaskItems()
+    public void setDataDirectory(File directory) {
+        close();
+        dataDirectory = directory;
+        useTaskList(openTaskList(taskList.name));
+    }
+
+    public String getTaskListName() {
+        return taskList.name;
+    }
+
+//    RETURNS THE DEFAULT TASK LIST, THEN EVERY OTHER ONE WITH A FILE OF THE CURRENT DATA SOURCE OR OPEN HERE, BY NAME
+    public List<String> getTaskListNames() {
+        String extension = dataSource == DataSource.XML ? ".xml" : dataSource == DataSource.SNAPSHOT ? ".snapshot" : ".db";
+        Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        String[] fileNames = (dataDirectory == null ? new File(".") : dataDirectory).list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                String name = TaskListShard.nameOf(fileName, extension, DEFAULT_TASK_LIST);
+                if (name != null) {
+                    names.add(name);
+                }
+            }
+        }
+        names.add(taskList.name);
+        synchronized (idleTaskLists) {
+            names.addAll(idleTaskLists.keySet());
+        }
+        names.remove(DEFAULT_TASK_LIST);
+
+        List<String> taskListNames = new ArrayList<>();
+        taskListNames.add(DEFAULT_TASK_LIST);
+        taskListNames.addAll(names);
+        return taskListNames;
+    }
+
+//    MAKES THE NAMED TASK LIST THE ONE ON SCREEN, CREATING IT IF IT IS NEW. THE LIST ON SCREEN IS SAVED AND KEPT
+//    OPEN FOR A WHILE, SO SWITCHING BACK TO IT READS NOTHING UNLESS ANOTHER PROGRAM CHANGED IT. BEFORE THE FIRST
+//    loadTaskItems() IT ONLY PICKS THE LIST THAT LOADS
+    public void switchTaskList(String name) {
+        if (!TaskListShard.isValidName(name)) {
+            throw new IllegalArgumentException("A task list name is made of letters, digits, spaces, - and _: " + name);
+        }
+        if (name.equalsIgnoreCase(taskList.name)) {
+            return;
+        }
+
+        // SAVES QUEUED CHANGES TO THE FILES OF THE LIST THEY WERE MADE TO
+        writer.flush();
+        stopWatcher();
+
+        TaskListShard next;
+        synchronized (idleTaskLists) {
+            waitForClose(name);
+            next = removeIdleTaskList(name);
+        }
+        if (dataSource != null) {
+            keepIdle(taskList);
+        } else {
+            taskList.close();
+        }
+        useTaskList(next != null ? next : openTaskList(name));
+
+        if (dataSource == null) {
+            return;
+        }
+        if (!restoreTaskList()) {
+            loadTaskItems(dataSource);
+        }
+    }
+
+//    PUTS THE TASK ITEMS OF AN IDLE TASK LIST BACK ON THE LIST, IF ITS FILES ARE AS THEY WERE. RETURNS FALSE OTHERWISE
+    private boolean restoreTaskList() {
+        long start = System.nanoTime();
+        List<TaskItem> items = taskList.items;
+        taskList.items = null;
+        if (items == null || taskList.loadedFrom != dataSource || pagedLoading) {
+            return false;
+        }
+
+        try {
+            switch (dataSource) {
+                case DB:
+                    synchronized (database) {
+                        if (readDBLong(database.prepare(DATA_VERSION_STATEMENT)) != taskList.dataVersion) {
+                            return false;
+                        }
+                    }
+                    break;
+                case XML:
+                    if (xmlJournal.isChangedOnDisk()) {
+                        return false;
+                    }
+                    break;
+                case SNAPSHOT:
+                    if (snapshotJournal.isChangedOnDisk()) {
+                        return false;
+                    }
+                    break;
+            }
+        } catch (SQLException e) {
+            System.out.println("Couldn't check the " + taskList.name + " task list: " + e.getMessage());
+            return false;
+        }
+
+        pagedTaskItems = null;
+        taskItems.setAll(items);
+        lastId = taskList.lastId;
+        dataVersion = taskList.dataVersion;
+        lastChangeSeq = taskList.lastChangeSeq;
+        System.out.println("Task list " + taskList.name + " is restored");
+        metrics.source(dataSource).record(TaskMetrics.Operation.LOAD, System.nanoTime() - start);
+        restartWatcher();
+        return true;
+    }
+
+//    KEEPS THE TASK ITEMS ON THE LIST WITH THE TASK LIST THEY CAME FROM AND CLOSES THE TASK LISTS OVER THE LIMIT
+    private void keepIdle(TaskListShard shard) {
+        // A PAGED LIST HOLDS NO TASK ITEMS. IT IS READ AGAIN
+        shard.items = pagedTaskItems == null ? new ArrayList<>(taskItems) : null;
+        shard.loadedFrom = dataSource;
+        shard.lastId = lastId;
+        shard.dataVersion = dataVersion;
+        shard.lastChangeSeq = lastChangeSeq;
+        shard.idleSince = System.currentTimeMillis();
+
+        List<TaskListShard> evicted = new ArrayList<>();
+        synchronized (idleTaskLists) {
+            idleTaskLists.put(shard.name, shard);
+            Iterator<TaskListShard> iterator = idleTaskLists.values().iterator();
+            while (idleTaskLists.size() - evicted.size() > MAX_IDLE_TASK_LISTS) {
+                TaskListShard idle = iterator.next();
+                evicted.add(idle);
+                closingTaskLists.add(idle.name);
+                iterator.remove();
+            }
+            if (evictionExecutor == null) {
+                evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "TaskList idle task lists");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                evictionExecutor.scheduleWithFixedDelay(this::evictIdleTaskLists,
+                        TASK_LIST_IDLE_MILLIS / 5, TASK_LIST_IDLE_MILLIS / 5, TimeUnit.MILLISECONDS);
+            }
+        }
+        for (TaskListShard idle : evicted) {
+            closeTaskList(idle);
+        }
+    }
+
+//    CLOSES THE TASK LISTS IDLE FOR LONGER THAN TASK_LIST_IDLE_MILLIS. CALLED ON THE EVICTION THREAD
+    private void evictIdleTaskLists() {
+        long now = System.currentTimeMillis();
+        List<TaskListShard> evicted = new ArrayList<>();
+        synchronized (idleTaskLists) {
+            Iterator<TaskListShard> iterator = idleTaskLists.values().iterator();
+            while (iterator.hasNext()) {
+                TaskListShard shard = iterator.next();
+                if (now - shard.idleSince >= TASK_LIST_IDLE_MILLIS) {
+                    evicted.add(shard);
+                    closingTaskLists.add(shard.name);
+                    iterator.remove();
+                }
+            }
+        }
+        for (TaskListShard shard : evicted) {
+            closeTaskList(shard);
+        }
+    }
+
+//    CLOSES AN IDLE TASK LIST TAKEN OFF idleTaskLists AND MARKED CLOSING, WITHOUT HOLDING THEIR LOCK
+    private void closeTaskList(TaskListShard shard) {
+        try {
+            shard.close();
+            System.out.println("Idle task list " + shard.name + " is closed");
+        } finally {
+            synchronized (idleTaskLists) {
+                closingTaskLists.remove(shard.name);
+                idleTaskLists.notifyAll();
+            }
+        }
+    }
+
+//    CALLED WITH idleTaskLists LOCKED. WAITS UNTIL THE NAMED TASK LIST, OR WITH NULL EVERY ONE, ISN'T BEING CLOSED
+    private void waitForClose(String name) {
+        boolean interrupted = false;
+        while (name == null ? !closingTaskLists.isEmpty() : closingTaskLists.contains(name)) {
+            try {
+                idleTaskLists.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+//    CALLED WITH idleTaskLists LOCKED. NAMES ARE MATCHED IGNORING CASE, AS FILE NAMES ARE ON SOME SYSTEMS
+    private TaskListShard removeIdleTaskList(String name) {
+        Iterator<TaskListShard> iterator = idleTaskLists.values().iterator();
+        while (iterator.hasNext()) {
+            TaskListShard shard = iterator.next();
+            if (shard.name.equalsIgnoreCase(name)) {
+                iterator.remove();
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private TaskListShard openTaskList(String name) {
+        TaskListShard shard = new TaskListShard(dataDirectory, name, name.equalsIgnoreCase(DEFAULT_TASK_LIST));
+        shard.xmlJournal.setMetrics(metrics.source(DataSource.XML));
+        shard.snapshotJournal.setMetrics(metrics.source(DataSource.SNAPSHOT));
+        shard.xmlJournal.setReadThreads(getLoadThreads(DataSource.XML));
+        shard.snapshotJournal.setReadThreads(getLoadThreads(DataSource.SNAPSHOT));
+        return shard;
+    }
+
+//    READS AND WRITES THE FILES OF THE TASK LIST FROM NOW ON
+    private void useTaskList(TaskListShard shard) {
+        taskList = shard;
+        database = shard.database;
+        xmlJournal = shard.xmlJournal;
+        snapshotJournal = shard.snapshotJournal;
+        clearDetailsCache();
+        history.clear();
+    }
+
+//    SETS HOW MANY THREADS DECODE THE DATA SOURCE ON LOAD. 1, THE DEFAULT, DECODES ON THE CALLING THREAD.
+//    XML IS SPLIT INTO RUNS OF TASK ELEMENTS, THE SNAPSHOT INTO RECORD RANGES AND THE DATABASE INTO ID RANGES.
+//    TAKES EFFECT ON THE NEXT loadTaskItems()
+    public void setLoadThreads(DataSource dataSource, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one load thread is needed: " + threads);
+        }
+        loadThreads.put(dataSource, threads);
+        xmlJournal.setReadThreads(getLoadThreads(DataSource.XML));
+        snapshotJournal.setReadThreads(getLoadThreads(DataSource.SNAPSHOT));
+        synchronized (idleTaskLists) {
+            for (TaskListShard shard : idleTaskLists.values()) {
+                shard.xmlJournal.setReadThreads(getLoadThreads(DataSource.XML));
+                shard.snapshotJournal.setReadThreads(getLoadThreads(DataSource.SNAPSHOT));
+            }
+        }
+    }
+
+    public int getLoadThreads(DataSource dataSource) {
+        return loadThreads.getOrDefault(dataSource, 1);
+    }
+
+//    ONLY THE DB DATA SOURCE LEAVES THE DETAILS IN THE DATABASE. THE XML AND SNAPSHOT FILES HAVE NO RANDOM ACCESS
+//    BY ID, SO THEY LOAD EVERYTHING. TAKES EFFECT ON THE NEXT loadTaskItems()
+    public void setLazyDetails(boolean lazyDetails) {
+        this.lazyDetails = lazyDetails;
+    }
+
+//    RETURNS TRUE IF THE LOADED TASK ITEMS FETCH THEIR DETAILS WHEN ASKED. prefetchDetails() IS WORTH CALLING THEN
+    public boolean isLazyDetails() {
+        return lazyDetails && dataSource == DataSource.DB && pagedTaskItems == null;
+    }
+
+//    FETCHES THE DETAILS OF THE TASK ITEMS NOT IN THE CACHE ON A BACKGROUND THREAD, A FEW ROWS PER QUERY.
+//    FOR THE ROWS AROUND THE SELECTED ONE, SO MOVING THROUGH THE LIST FINDS THEIR DETAILS IN MEMORY
+    public void prefetchDetails(List<TaskItem> items) {
+        if (!isLazyDetails()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>();
+        long generation;
+        synchronized (detailsCache) {
+            for (TaskItem item : items) {
+                if (!item.hasDetails() && !detailsCache.containsKey(item.getId())) {
+                    ids.add(item.getId());
+                }
+            }
+            generation = detailsGeneration;
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TaskList details prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        TaskDatabase prefetchDatabase = database;
+        prefetchExecutor.execute(() -> {
+            try {
+                Map<Long, String> fetched = new HashMap<>();
+                for (int from = 0; from < ids.size(); from += DETAILS_BATCH_SIZE) {
+                    List<Long> batch = ids.subList(from, Math.min(from + DETAILS_BATCH_SIZE, ids.size()));
+                    synchronized (prefetchDatabase) {
+                        PreparedStatement select = prefetchDatabase.prepare(SELECT_DETAILS_BATCH_STATEMENT);
+                        // A SHORT BATCH REPEATS ITS FIRST ID, SO ONE STATEMENT SERVES EVERY BATCH
+                        for (int i = 0; i < DETAILS_BATCH_SIZE; i++) {
+                            select.setLong(i + 1, batch.get(i < batch.size() ? i : 0));
+                        }
+                        try(ResultSet resultSet = select.executeQuery()) {
+                            while (resultSet.next()) {
+                                String details = resultSet.getString(2);
+                                fetched.put(resultSet.getLong(1), details == null ? "" : details);
+                            }
+                        }
+                    }
+                }
+                synchronized (detailsCache) {
+                    if (generation == detailsGeneration) {
+                        fetched.forEach(detailsCache::putIfAbsent);
+                    }
+                }
+            } catch (SQLException e) {
+                System.out.println("Couldn't prefetch task details: " + e.getMessage());
+            }
+        });
+    }
+
+//    RETURNS THE DETAILS OF THE TASK ITEMS LOADED WITHOUT THEM BY ID, FROM THE CACHE AND ONE QUERY FOR THE REST.
+//    A FEW ARE LOOKED UP BY ID, MORE IN ONE PASS OVER THE TABLE. FOR CALLERS THAT WRITE MANY TASK ITEMS AT ONCE
+    Map<Long, String> loadDetails(List<TaskItem> items) {
+        Map<Long, String> details = new HashMap<>();
+        Set<Long> ids = new HashSet<>();
+        synchronized (detailsCache) {
+            for (TaskItem item : items) {
+                if (!item.hasDetails()) {
+                    String cached = detailsCache.get(item.getId());
+                    if (cached != null) {
+                        details.put(item.getId(), cached);
+                    } else {
+                        ids.add(item.getId());
+                    }
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return details;
+        }
+
+        try {
+            synchronized (database) {
+                PreparedStatement select;
+                if (ids.size() <= DETAILS_BATCH_SIZE) {
+                    select = database.prepare(SELECT_DETAILS_BATCH_STATEMENT);
+                    // A SHORT BATCH REPEATS ITS FIRST ID, LIKE prefetchDetails()
+                    Long[] batch = ids.toArray(new Long[0]);
+                    for (int i = 0; i < DETAILS_BATCH_SIZE; i++) {
+                        select.setLong(i + 1, batch[i < batch.length ? i : 0]);
+                    }
+                } else {
+                    select = database.prepare(SELECT_ALL_DETAILS_STATEMENT);
+                }
+                try(ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        long id = resultSet.getLong(1);
+                        if (ids.contains(id)) {
+                            String text = resultSet.getString(2);
+                            details.put(id, text == null ? "" : text);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Couldn't load the details of the task items: " + e.getMessage());
+        }
+        for (long id : ids) {
+            details.putIfAbsent(id, "");
+        }
+        return details;
+    }
+
+//    RETURNS THE DETAILS OF A TASK ITEM LOADED WITHOUT THEM. FROM THE CACHE, OR FROM THE DATABASE ON A MISS
+    private String loadDetails(TaskItem item) {
+        synchronized (detailsCache) {
+            String details = detailsCache.get(item.getId());
+            if (details != null) {
+                return details;
+            }
+        }
+
+        try {
+            String details = "";
+            long generation;
+            synchronized (detailsCache) {
+                generation = detailsGeneration;
+            }
+            synchronized (database) {
+                PreparedStatement select = database.prepare(SELECT_DETAILS_STATEMENT);
+                select.setLong(1, item.getId());
+                try(ResultSet resultSet = select.executeQuery()) {
+                    if (resultSet.next() && resultSet.getString(1) != null) {
+                        details = resultSet.getString(1);
+                    }
+                }
+            }
+            synchronized (detailsCache) {
+                if (generation == detailsGeneration) {
+                    detailsCache.put(item.getId(), details);
+                }
+            }
+            metrics.source(DataSource.DB).recordBytesRead(details.length());
+            return details;
+
+        } catch (SQLException e) {
+            System.out.println("Couldn't load the details of task item " + item.getId() + ": " + e.getMessage());
+            return "";
+        }
+    }
+
+    private void clearDetailsCache() {
+        synchronized (detailsCache) {
+            detailsCache.clear();
+            detailsGeneration++;
+        }
+    }
+
+//    ONLY THE DB DATA SOURCE SUPPORTS PAGED LOADING. TAKES EFFECT ON THE NEXT loadTaskItems()
+    public void setPagedLoading(boolean pagedLoading) {
+        this.pagedLoading = pagedLoading;
+    }
+
+    public boolean isPagedLoading() {
+        return pagedTaskItems != null;
+    }
+
+//    RETURNS THE PAGED VIEW OF THE DB TASK ITEMS, OR NULL WHEN THEY ARE LOADED ALL AT ONCE
+    public PagedTaskList getPagedTaskItems() {
+        return pagedTaskItems;
+    }
+
+    public void loadTaskItems(DataSource dataSource) {
+
+        // SAVES QUEUED CHANGES BEFORE READING THE DATA SOURCE
+        writer.flush();
+        pagedTaskItems = null;
+        clearDetailsCache();
+        history.clear();
+        long start = System.nanoTime();
+
+        switch(dataSource) {
+            case DB:
+                // THE DATABASE IS SEARCHED THROUGH ITS FTS5 INDEX. THE IN-MEMORY ONE WOULD ONLY FOLLOW THE LIST FOR NOTHING
+                dropSearchIndex();
+                if (pagedLoading) {
+                    loadDBPagedTaskItems();
+                    this.dataSource = DataSource.DB;
+                    System.out.println("Task items from the SQLite database are loaded page by page");
+                    metrics.source(DataSource.DB).record(TaskMetrics.Operation.LOAD, System.nanoTime() - start);
+                    restartWatcher();
+                    return;
+                }
+                loadDBTaskItems();
+                this.dataSource = DataSource.DB;
+                System.out.println("Task items from the SQLite database are loaded");
+                break;
+
+            case XML:
+                loadXMLTaskItems();
+                this.dataSource = DataSource.XML;
+                System.out.println("Task items from the XLM file are loaded");
+                break;
+
+            case SNAPSHOT:
+                loadSnapshotTaskItems();
+                this.dataSource = DataSource.SNAPSHOT;
+                System.out.println("Task items from the snapshot file are loaded");
+                break;
+        }
+
+        // NEW TASK ITEMS GET IDS ABOVE EVERY LOADED ONE
+        lastId = 0;
+        for (TaskItem taskItem : taskItems) {
+            lastId = Math.max(lastId, taskItem.getId());
+        }
+        metrics.source(dataSource).record(TaskMetrics.Operation.LOAD, System.nanoTime() - start);
+        metrics.source(dataSource).recordItemsLoaded(taskItems.size());
+        restartWatcher();
+    }
+
+//    LOADS THE DATA SOURCE ON THE CALLING THREAD, NOT THE JavaFX ONE, AND PUTS THE TASK ITEMS ON THE LIST BATCH BY
+//    BATCH ON THE EXECUTOR, WHICH MUST RUN THEM ON THE JavaFX APPLICATION THREAD. THE TASK ITEMS DUE ON OR AFTER
+//    firstDay COME FIRST, SO THE FIRST ONES DUE ARE ON THE LIST AFTER THE FIRST BATCH. THE LIST CAN BE CHANGED
+//    WHILE IT FILLS, BUT ONLY ONCE THE FIRST BATCH HAS SET THE DATA SOURCE. THE PAGED VIEW READS NOTHING UP FRONT,
+//    SO IT IS LOADED IN ONE GO ON THE EXECUTOR. A FAILED LOAD IS THROWN AFTER WHAT WAS READ IS ON THE LIST
+    public void loadTaskItemsInBackground(DataSource dataSource, LocalDate firstDay, Executor applyExecutor,
+                                          LoadProgress progress) throws Exception {
+        if (dataSource == DataSource.DB && pagedLoading) {
+            applyExecutor.execute(() -> {
+                loadTaskItems(dataSource);
+                progress.loaded(0, 0);
+            });
+            return;
+        }
+
+        writer.flush();
+        clearDetailsCache();
+        long start = System.nanoTime();
+        LoadBatches batches = new LoadBatches(applyExecutor, progress);
+
+        try {
+            if (dataSource == DataSource.DB) {
+                loadDBTaskItemsInBackground(firstDay, batches);
+            } else {
+                loadJournalTaskItemsInBackground(dataSource, firstDay, batches);
+            }
+            System.out.println("Task items from the " + dataSource + " data source are loaded in the background");
+
+        } catch (Exception e) {
+            System.out.println("Couldn't load task items from the " + dataSource + " data source: " + e.getMessage());
+            metrics.source(dataSource).recordFailure(TaskMetrics.Operation.LOAD);
+            batches.finish();
+            throw e;
+        }
+
+        batches.finish();
+        applyExecutor.execute(() -> {
+            metrics.source(dataSource).record(TaskMetrics.Operation.LOAD, System.nanoTime() - start);
+            metrics.source(dataSource).recordItemsLoaded(batches.loaded);
+            restartWatcher();
+        });
+    }
+
+//    EMPTIES THE LIST AND MAKES THE DATA SOURCE THE ONE CHANGES ARE SAVED TO, BEFORE THE FIRST BATCH ARRIVES.
+//    NEW TASK ITEMS GET IDS ABOVE lastId, SO THEY CAN BE ADDED WHILE THE LIST FILLS
+    private void startLoadingInBackground(DataSource dataSource, long lastId, Executor applyExecutor) {
+        applyExecutor.execute(() -> {
+            stopWatcher();
+            pagedTaskItems = null;
+            history.clear();
+            if (dataSource == DataSource.DB) {
+                dropSearchIndex();
+            }
+            taskItems.clear();
+            this.lastId = lastId;
+            this.dataSource = dataSource;
+        });
+    }
+
+//    READS BOTH RANGES OF DEADLINES IN ONE READ TRANSACTION OF ITS OWN CONNECTION, SO EVERY ROW IS READ ONCE
+//    AND WRITERS AREN'T HELD UP. THE ROWS ARE COUNTED ONCE THE FIRST BATCH IS ON ITS WAY
+    private void loadDBTaskItemsInBackground(LocalDate firstDay, LoadBatches batches) throws SQLException {
+        long lastId;
+        synchronized (database) {
+            Connection connection = database.getConnection();
+            try(Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE_STATEMENT);
+                migrateDBSchema(connection, statement);
+            }
+            // BEFORE READING, SO A ROW CHANGED DURING THE READ IS READ AGAIN BY THE WATCHER
+            resetDBChangeLog();
+            lastId = readDBLong(database.prepare(MAX_ID_STATEMENT));
+        }
+        startLoadingInBackground(DataSource.DB, lastId, batches.executor);
+
+        boolean withDetails = !lazyDetails;
+        String select = withDetails ? SELECT_TASKS_STATEMENT : SELECT_TASKS_WITHOUT_DETAILS_STATEMENT;
+        int threads = getLoadThreads(DataSource.DB);
+        if (threads > 1) {
+            loadDBTaskItemsInParallel(select, withDetails, firstDay, threads, batches);
+            return;
+        }
+
+        try(Connection connection = database.openConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String clause : new String[] {DUE_ON_OR_AFTER_CLAUSE, DUE_BEFORE_CLAUSE}) {
+                    try(PreparedStatement statement = connection.prepareStatement(select + clause)) {
+                        statement.setLong(1, firstDay.toEpochDay());
+                        try(ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                batches.add(readDBTaskItem(resultSet, withDetails));
+                                if (batches.total < 0 && batches.loaded > 0) {
+                                    batches.total = countDBTaskItems(connection);
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+//    SPLITS BOTH RANGES OF DEADLINES INTO RUNS OF DAYS AND READS EACH RUN ON ITS OWN CONNECTION. THE RUNS ARE HANDED
+//    OVER IN THE SAME ORDER AS ONE READ WOULD, AS SOON AS THEY AND THE RUNS BEFORE THEM ARE READ. EACH RUN IS ITS OWN
+//    READ TRANSACTION, SO A ROW WHOSE DEADLINE MOVED DURING THE LOAD MAY BE MISSED OR READ TWICE. ONLY ITS FIRST
+//    COPY IS KEPT, AND THE WATCHER READS IT AGAIN FROM THE CHANGE LOG EITHER WAY
+    private void loadDBTaskItemsInParallel(String select, boolean withDetails, LocalDate firstDay, int threads,
+                                           LoadBatches batches) throws SQLException {
+        long firstDue = firstDay.toEpochDay();
+        List<long[]> runs = new ArrayList<>();
+        try(Connection connection = database.openConnection()) {
+            long minDay;
+            long maxDay;
+            try(Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(DEADLINE_SPAN_STATEMENT)) {
+                resultSet.next();
+                minDay = resultSet.getLong(1);
+                maxDay = resultSet.getLong(2);
+                if (resultSet.wasNull()) {
+                    return;
+                }
+            }
+
+            int chunks = threads * ParallelTaskDecoder.CHUNKS_PER_THREAD;
+            addDeadlineRuns(runs, Math.max(minDay, firstDue), maxDay + 1, chunks);
+            addDeadlineRuns(runs, minDay, Math.min(maxDay + 1, firstDue), chunks);
+
+            TaskIdSet read = new TaskIdSet();
+            ParallelTaskDecoder.decode(runs, threads, run -> {
+                List<TaskItem> items = new ArrayList<>();
+                try(Connection runConnection = database.openConnection();
+                    PreparedStatement statement = runConnection.prepareStatement(select + DUE_BETWEEN_CLAUSE)) {
+                    statement.setLong(1, run[0]);
+                    statement.setLong(2, run[1]);
+                    try(ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            items.add(readDBTaskItem(resultSet, withDetails));
+                        }
+                    }
+                }
+                return items;
+            }, items -> {
+                for (TaskItem item : items) {
+                    if (!read.test(item)) {
+                        read.add(item.getId());
+                        batches.add(item);
+                    }
+                }
+                if (batches.total < 0 && batches.loaded > 0) {
+                    try {
+                        batches.total = countDBTaskItems(connection);
+                    } catch (SQLException e) {
+                        System.out.println("Couldn't count the task items: " + e.getMessage());
+                    }
+                }
+            });
+
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e.getCause());
+        }
+    }
+
+//    SPLITS THE DAYS FROM from UP TO to INTO AT MOST chunks RUNS OF { FIRST DAY, DAY AFTER THE LAST }
+    private static void addDeadlineRuns(List<long[]> runs, long from, long to, int chunks) {
+        long runSize = Math.max(1, (to - from + chunks - 1) / chunks);
+        for (long start = from; start < to; start += runSize) {
+            runs.add(new long[] {start, Math.min(start + runSize, to)});
+        }
+    }
+
+    private static long countDBTaskItems(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM taskitems")) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+//    A FILE IS READ WHOLE, AS ITS JOURNAL ENTRIES CAN CHANGE ANY TASK ITEM OF IT, AND THEN HANDED OVER IN BATCHES
+    private void loadJournalTaskItemsInBackground(DataSource dataSource, LocalDate firstDay, LoadBatches batches)
+            throws Exception {
+        List<TaskItem> items = dataSource == DataSource.XML ? xmlJournal.load() : snapshotJournal.load();
+        long lastId = 0;
+        for (TaskItem taskItem : items) {
+            lastId = Math.max(lastId, taskItem.getId());
+        }
+        startLoadingInBackground(dataSource, lastId, batches.executor);
+
+        items.sort(Comparator.comparingInt(TaskItem::getDeadlineEpochDay));
+        int firstDue = 0;
+        while (firstDue < items.size() && items.get(firstDue).getDeadlineEpochDay() < firstDay.toEpochDay()) {
+            firstDue++;
+        }
+        batches.total = items.size();
+        for (TaskItem taskItem : items.subList(firstDue, items.size())) {
+            batches.add(taskItem);
+        }
+        for (TaskItem taskItem : items.subList(0, firstDue)) {
+            batches.add(taskItem);
+        }
+    }
+
+    /**
+     * Collects the task items of a background load and puts them on the list in batches of growing size.
+     */
+    private class LoadBatches {
+
+        final Executor executor;
+        final LoadProgress progress;
+
+        private List<TaskItem> batch = new ArrayList<>(FIRST_LOAD_BATCH);
+        private int batchSize = FIRST_LOAD_BATCH;
+
+//        TASK ITEMS HANDED TO THE EXECUTOR SO FAR, AND IN ALL
+        long loaded;
+        long total = -1;
+
+        LoadBatches(Executor executor, LoadProgress progress) {
+            this.executor = executor;
+            this.progress = progress;
+        }
+
+        void add(TaskItem taskItem) {
+            batch.add(taskItem);
+            if (batch.size() == batchSize) {
+                publish();
+                batchSize = Math.min(batchSize * 2, MAX_LOAD_BATCH);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+//        HANDS OVER WHAT IS LEFT. THE TOTAL IS WHAT WAS READ, AS ROWS MAY HAVE CHANGED SINCE THEY WERE COUNTED
+        void finish() {
+            total = loaded + batch.size();
+            publish();
+        }
+
+        private void publish() {
+            List<TaskItem> items = batch;
+            loaded += items.size();
+            long loadedSoFar = loaded;
+            long totalSoFar = total;
+            executor.execute(() -> {
+                taskItems.append(items);
+                progress.loaded(loadedSoFar, totalSoFar);
+            });
+        }
+    }
+
+//    STARTS APPLYING CHANGES OTHER PROGRAMS MAKE TO THE DATA SOURCE. FILES ARE WATCHED, THE DATABASE IS POLLED.
+//    ONLY THE INSERTED, UPDATED AND DELETED TASK ITEMS ARE APPLIED, ON THE EXECUTOR, WHICH MUST RUN THEM
+//    ON THE JavaFX APPLICATION THREAD. KEEPS WATCHING THE DATA SOURCE LOADED NEXT
+    public void startWatching(Executor applyExecutor) {
+        watchExecutor = applyExecutor;
+        restartWatcher();
+    }
+
+    public void stopWatching() {
+        watchExecutor = null;
+        stopWatcher();
+    }
+
+    private void restartWatcher() {
+        stopWatcher();
+        if (watchExecutor == null || dataSource == null) {
+            return;
+        }
+
+        try {
+            switch (dataSource) {
+                case DB:
+                    watcher = new TaskSourceWatcher(DB_WATCH_INTERVAL_MILLIS, this::checkDBChanges);
+                    break;
+                case XML:
+                    watchedTaskItems = sortedById(taskItems);
+                    watcher = new TaskSourceWatcher(xmlJournal.getFile(), () -> checkJournalChanges(xmlJournal));
+                    break;
+                case SNAPSHOT:
+                    watchedTaskItems = sortedById(taskItems);
+                    watcher = new TaskSourceWatcher(snapshotJournal.getFile(), () -> checkJournalChanges(snapshotJournal));
+                    break;
+            }
+        } catch (IOException e) {
+            System.out.println("Couldn't watch the " + dataSource + " data source: " + e.getMessage());
+        }
+    }
+
+    private void stopWatcher() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        watchedTaskItems = null;
+    }
+
+//    RE-READS A FILE ANOTHER PROGRAM CHANGED AND APPLIES WHAT CHANGED SINCE IT WAS LAST READ. CALLED ON THE WATCHER THREAD
+    private void checkJournalChanges(TaskJournal journal) throws IOException {
+        if (!journal.isChangedOnDisk()) {
+            // WRITTEN BY THE JOURNAL ITSELF
+            return;
+        }
+
+        // SAVES QUEUED CHANGES FIRST. THE JOURNAL REPLAYS THEM OVER THE NEW FILE
+        writer.flush();
+        TaskItem[] loaded = sortedById(journal.load());
+        TaskItem[] previous = watchedTaskItems;
+        if (previous == null) {
+            return;
+        }
+        watchedTaskItems = loaded;
+
+        // BOTH ARRAYS ARE SORTED BY ID, SO ONE MERGING PASS FINDS EVERY DIFFERENCE
+        List<TaskItem> upserted = new ArrayList<>();
+        List<Long> removedIds = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < previous.length || j < loaded.length) {
+            long previousId = i < previous.length ? previous[i].getId() : Long.MAX_VALUE;
+            long loadedId = j < loaded.length ? loaded[j].getId() : Long.MAX_VALUE;
+            if (previousId < loadedId) {
+                removedIds.add(previousId);
+                i++;
+            } else if (loadedId < previousId) {
+                upserted.add(loaded[j]);
+                j++;
+            } else {
+                if (!TaskItemList.sameContent(previous[i], loaded[j])) {
+                    upserted.add(loaded[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        if (!upserted.isEmpty() || !removedIds.isEmpty()) {
+            System.out.println(upserted.size() + " changed and " + removedIds.size() +
+                    " deleted task items are read from the " + dataSource + " data source");
+            applyExternalChanges(upserted, removedIds, null, -1, lastChangeSeq);
+        }
+    }
+
+//    READS THE ROWS ANOTHER PROGRAM CHANGED. CALLED ON THE WATCHER THREAD
+    private void checkDBChanges() throws SQLException {
+        synchronized (database) {
+            long version = readDBLong(database.prepare(DATA_VERSION_STATEMENT));
+            if (version == dataVersion) {
+                return;
+            }
+            dataVersion = version;
+        }
+
+        // SAVES QUEUED CHANGES FIRST, SO THE ROWS READ BELOW ALREADY HOLD THEM
+        long localChangesSeen = localChanges;
+        writer.flush();
+
+        List<TaskItem> upserted = new ArrayList<>();
+        List<Long> removedIds = new ArrayList<>();
+        long seq = lastChangeSeq;
+
+        synchronized (database) {
+            long last = readDBLong(database.prepare(LAST_CHANGE_STATEMENT));
+            if (last == seq) {
+                // A COMMIT THAT CHANGED NO TASK ITEM
+                return;
+            }
+
+            // ANOTHER PROGRAM PRUNED ENTRIES NOT YET APPLIED HERE. ONLY A FULL COMPARISON IS RIGHT
+            long first = readDBLong(database.prepare(FIRST_CHANGE_STATEMENT));
+            if (first == 0 || first > seq + 1) {
+                try(Statement statement = database.getConnection().createStatement()) {
+                    List<TaskItem> loaded = readDBTaskItems(statement, !lazyDetails);
+                    // A TASK ITEM WHOSE DETAILS ALONE CHANGED KEEPS ITS OBJECT. ITS DETAILS ARE FETCHED AGAIN
+                    clearDetailsCache();
+                    applyExternalChanges(null, null, loaded, localChangesSeen, last);
+                }
+                pruneDBChangeLog(last);
+                return;
+            }
+
+            Set<Long> changedIds = new LinkedHashSet<>();
+            PreparedStatement selectChanges = database.prepare(SELECT_CHANGES_STATEMENT);
+            selectChanges.setLong(1, seq);
+            try(ResultSet resultSet = selectChanges.executeQuery()) {
+                while (resultSet.next()) {
+                    seq = resultSet.getLong(1);
+                    changedIds.add(resultSet.getLong(2));
+                }
+            }
+
+            PreparedStatement selectTask = database.prepare(SELECT_TASK_STATEMENT);
+            for (long id : changedIds) {
+                selectTask.setLong(1, id);
+                try(ResultSet resultSet = selectTask.executeQuery()) {
+                    if (resultSet.next()) {
+                        upserted.add(readDBTaskItem(resultSet));
+                    } else {
+                        removedIds.add(id);
+                    }
+                }
+            }
+            pruneDBChangeLog(seq);
+        }
+
+        if (!upserted.isEmpty() || !removedIds.isEmpty()) {
+            applyExternalChanges(upserted, removedIds, null, localChangesSeen, seq);
+        }
+    }
+
+//    APPLIES CHANGES READ BY THE WATCHER ON THE EXECUTOR. EITHER THE UPSERTED AND REMOVED TASK ITEMS OR,
+//    AFTER A FULL COMPARISON, EVERY LOADED ONE. A DATABASE CHANGE THAT RACED A CHANGE MADE HERE IS READ AGAIN.
+//    localChangesSeen IS -1 WHEN THE CHANGES CAN'T RACE, BECAUSE THEY ARE THE DIFFERENCE OF TWO READS
+    private void applyExternalChanges(List<TaskItem> upserted, List<Long> removedIds, List<TaskItem> loaded,
+                                      long localChangesSeen, long seq) {
+        Executor executor = watchExecutor;
+        if (executor == null) {
+            return;
+        }
+
+        executor.execute(() -> {
+            if (localChangesSeen >= 0 && localChanges != localChangesSeen) {
+                dataVersion = -1;
+                return;
+            }
+            lastChangeSeq = seq;
+            history.clear();
+
+            if (pagedTaskItems != null) {
+                pagedTaskItems.refresh();
+                return;
+            }
+            if (loaded != null) {
+                taskItems.reload(loaded);
+            } else {
+                taskItems.apply(upserted, removedIds);
+            }
+
+            // NEW TASK ITEMS GET IDS ABOVE THE ONES ANOTHER PROGRAM ADDED
+            for (TaskItem taskItem : loaded != null ? loaded : upserted) {
+                lastId = Math.max(lastId, taskItem.getId());
+            }
+        });
+    }
+
+//    THE TRIGGERS LOG EVERY CHANGE OF EVERY PROGRAM, SO THE LOG IS PRUNED UP TO THE CHANGES JUST READ. THE LAST FEW
+//    STAY, SO ANOTHER PROGRAM A LITTLE BEHIND STILL READS THEM INSTEAD OF COMPARING EVERY ROW. A BUSY DATABASE
+//    IS PRUNED ON THE NEXT CHECK
+    private void pruneDBChangeLog(long seq) {
+        try {
+            PreparedStatement prune = database.prepare(PRUNE_CHANGES_STATEMENT);
+            prune.setLong(1, seq - CHANGE_LOG_KEPT);
+            prune.executeUpdate();
+        } catch (SQLException e) {
+            System.out.println("Couldn't prune the task item change log: " + e.getMessage());
+        }
+    }
+
+//    EVERY LOGGED CHANGE IS IN THE ROWS ABOUT TO BE READ. PRUNES THE LOG AND REMEMBERS WHERE IT ENDS.
+//    A DATABASE BUSY WITH ANOTHER PROGRAM'S WRITE DOESN'T HOLD UP THE LOAD. ITS LOG IS PRUNED ON THE NEXT CHECK
+    private void resetDBChangeLog() throws SQLException {
+        synchronized (database) {
+            lastChangeSeq = readDBLong(database.prepare(LAST_CHANGE_STATEMENT));
+            pruneDBChangeLog(lastChangeSeq);
+            dataVersion = readDBLong(database.prepare(DATA_VERSION_STATEMENT));
+            // A LOAD READS EVERY ROW UNDER THE ID IT WAS SAVED UNDER
+            reassignedIds.clear();
+        }
+    }
 
-//    PRIVATE STATIC INSTANCE OF THIS CLASS
-    private static TaskData instance = new TaskData();
+    private static TaskItem[] sortedById(List<TaskItem> items) {
+        TaskItem[] sorted = items.toArray(new TaskItem[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(TaskItem::getId));
+        return sorted;
+    }
 
-    private static final String XML_CONNECTION_STRING = "TaskListItems.xml";
+    private static long readDBLong(PreparedStatement statement) throws SQLException {
+        try(ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
 
-    private static final String DB_NAME = "TaskListItems.db";
-    private static final String DB_CONNECTION_STRING = "jdbc:sqlite:" + DB_NAME;
+//    RETURNS A PREDICATE THAT LETS THROUGH THE TASK ITEMS WHOSE TEXT CONTAINS EVERY WORD OF THE QUERY.
+//    THE LAST WORD ALSO MATCHES AS A PREFIX. A QUERY WITHOUT WORDS LETS EVERY TASK ITEM THROUGH
+    public Predicate<TaskItem> getSearchPredicate(String query) {
+        if (TaskSearchIndex.words(query).isEmpty()) {
+            return taskItem -> true;
+        }
 
-    private ObservableList<TaskItem> taskItems;
+        if (dataSource == DataSource.DB) {
+            return searchDBTaskIds(query);
+        }
 
-    private DateTimeFormatter formatter;
+        if (searchIndex == null) {
+            searchIndex = new TaskSearchIndex();
+            searchIndex.reset(taskItems);
+            taskItems.addListener(searchIndex);
+        }
+        return searchIndex.search(query);
+    }
 
-    public enum DataSource {
-        DB,
-        XML
+    private void dropSearchIndex() {
+        if (searchIndex != null) {
+            taskItems.removeListener(searchIndex);
+            searchIndex = null;
+        }
     }
 
-    DataSource dataSource;
+//    TRUE IF getSearchPredicate() QUERIES THE DATABASE, SO IT CAN BE CALLED OFF THE JavaFX THREAD AND IS BEST
+//    CALLED THERE. OTHERWISE IT READS THE IN-MEMORY INDEX, WHICH ONLY THE JavaFX THREAD MAY USE
+    public boolean isSearchInDatabase() {
+        return dataSource == DataSource.DB;
+    }
 
-//    RETURNS AN INSTANCE OF THIS SINGLETON CLASS
-    public static TaskData getInstance() {
-        return instance;
+//    LOOKS UP THE IDS OF THE MATCHING ROWS IN THE FTS5 INDEX. THE INDEX ONLY KNOWS THE SAVED ROWS, SO THE TASK
+//    ITEMS STILL TO SAVE ARE MATCHED IN MEMORY INSTEAD, WITHOUT WAITING FOR THE WRITER. THEY ARE TAKEN BEFORE
+//    THE QUERY, SO A BATCH SAVED IN BETWEEN IS STILL MATCHED IN MEMORY
+    private TaskIdSet searchDBTaskIds(String query) {
+        TaskIdSet ids = new TaskIdSet();
+        Map<Long, TaskItem> unsaved = writer.unsavedItems();
+
+        synchronized (database) {
+            try {
+                PreparedStatement search = database.prepare(SEARCH_TASKS_STATEMENT);
+                search.setString(1, TaskSearchIndex.matchExpression(query));
+                try (ResultSet resultSet = search.executeQuery()) {
+                    while (resultSet.next()) {
+                        if (!unsaved.containsKey(resultSet.getLong(1))) {
+                            ids.add(resultSet.getLong(1));
+                        }
+                    }
+                }
+
+            } catch (SQLException e) {
+                System.out.println("Couldn't search the task items: " + e.getMessage());
+            }
+        }
+
+        for (TaskItem item : unsaved.values()) {
+            if (item != null && TaskSearchIndex.matches(query, item)) {
+                ids.add(item.getId());
+            }
+        }
+        return ids;
     }
 
-    private TaskData() {
-        formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+//    RETURNS THE TASK ITEMS DUE ON THE DATE
+    public List<TaskItem> getTaskItemsDueOn(LocalDate date) {
+        return deadlineIndex.dueOn(date);
     }
 
-    public ObservableList<TaskItem> getTaskItems() {
-        return taskItems;
+//    RETURNS THE TASK ITEMS DUE BEFORE THE DATE, EARLIEST FIRST
+    public List<TaskItem> getOverdueTaskItems(LocalDate today) {
+        return deadlineIndex.dueBefore(today);
     }
 
-    public void loadTaskItems(DataSource dataSource) {
-        switch(dataSource) {
-            case DB:
-                loadDBTaskItems();
-                this.dataSource = DataSource.DB;
-                System.out.println("Task items from the SQLite database are loaded");
-                break;
+//    RETURNS THE NEXT COUNT TASK ITEMS DUE ON OR AFTER THE DATE, EARLIEST FIRST
+    public List<TaskItem> getUpcomingTaskItems(LocalDate from, int count) {
+        return deadlineIndex.dueFrom(from, count);
+    }
 
-            case XML:
-                loadXMLTaskItems();
-                this.dataSource = DataSource.XML;
-                System.out.println("Task items from the XLM file are loaded");
-                break;
-        }
+//    RETURNS THE FIRST TASK ITEM DUE ON OR AFTER THE DATE, OR NULL IF THERE IS NONE
+    public TaskItem getFirstTaskItemOnOrAfter(LocalDate date) {
+        return deadlineIndex.firstOnOrAfter(date);
     }
 
 //    LOADS TASK ITEMS FROM A XML TO THE ListView's ObservableList
     private void loadXMLTaskItems() {
 
-        // CREATES THE ObservableList
-        taskItems = FXCollections.observableArrayList();
-
         try {
-            // CREATES A DocumentBuilder FROM THE XML FILE
-            File inputFile = new File(XML_CONNECTION_STRING);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            // STREAMS THE XML FILE AND REPLAYS THE JOURNAL ENTRIES NOT YET MERGED INTO IT
+            taskItems.reload(xmlJournal.load());
 
-            // CREATES A Document FROM A DocumentBuilder
-            Document document = dBuilder.parse(inputFile);
-            document.getDocumentElement().normalize();
+        } catch (Exception e) {
+            System.out.println("Couldn't load task items from XML file:  " + e.getMessage());
+            metrics.source(DataSource.XML).recordFailure(TaskMetrics.Operation.LOAD);
+            taskItems.clear();
+            e.printStackTrace();
+        }
+    }
+
+//    LOADS TASK ITEMS FROM THE MEMORY-MAPPED SNAPSHOT FILE TO THE ListView's ObservableList
+    private void loadSnapshotTaskItems() {
 
-            // CREATE A NODE LIST OF ELEMENTS BY TAG NAME
-            NodeList nList = document.getElementsByTagName("task");
+        try {
+            // DECODES THE MAPPED FILE AND REPLAYS THE JOURNAL ENTRIES NOT YET MERGED INTO IT
+            taskItems.reload(snapshotJournal.load());
 
-            // ITERATES THROUGH EVERY NODE IN THE NodeList
-            for (int i = 0; i < nList.getLength(); i++) {
+        } catch (Exception e) {
+            System.out.println("Couldn't load task items from snapshot file: " + e.getMessage());
+            metrics.source(DataSource.SNAPSHOT).recordFailure(TaskMetrics.Operation.LOAD);
+            taskItems.clear();
+            e.printStackTrace();
+        }
+    }
 
-                Node nNode = nList.item(i);
+//    PREPARES THE PAGED VIEW OF THE DATABASE. NO TASK ITEM IS READ UNTIL THE ListView ASKS FOR IT
+    private void loadDBPagedTaskItems() {
 
-                if (nNode.getNodeType() == Node.ELEMENT_NODE) {
+        // THE ObservableList IS EMPTIED. THE ListView SHOWS THE PAGED VIEW INSTEAD
+        taskItems.clear();
 
-                    Element eElement = (Element) nNode;
+        try {
+            Connection connection = database.getConnection();
 
-                    String shortDescription = eElement.getElementsByTagName("shortDescription").item(0).getTextContent();
-                    String details = eElement.getElementsByTagName("details").item(0).getTextContent();
-                    String dateString = eElement.getElementsByTagName("deadline").item(0).getTextContent();
+            try(Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE_STATEMENT);
+                migrateDBSchema(connection, statement);
 
-                    LocalDate date = LocalDate.parse(dateString, formatter);
-                    TaskItem taskItem = new TaskItem(shortDescription, details, date);
-                    taskItems.add(taskItem);
+                try(ResultSet resultSet = statement.executeQuery("SELECT MAX(id) FROM taskitems")) {
+                    lastId = resultSet.next() ? resultSet.getLong(1) : 0;
                 }
-
+                resetDBChangeLog();
             }
 
-        } catch (Exception e) {
-            System.out.println("Couldn't load task items from XML file:  " + e.getMessage());
-            e.printStackTrace();
+            pagedTaskItems = new PagedTaskList(database);
+
+        } catch (SQLException e) {
+            System.out.println("Could not prepare the paged task items: " + e.getMessage());
+            metrics.source(DataSource.DB).recordFailure(TaskMetrics.Operation.LOAD);
         }
     }
 
 //    LOADS TASK ITEMS FROM A DATABASE TO THE ListView's ObservableList
     private void loadDBTaskItems() {
 
-        // CONNECTS TO THE DATABASE. GETS A CONNECTION INSTANCE
-        try(Connection connection = DriverManager.getConnection(DB_CONNECTION_STRING)) {
+        try {
+            // GETS THE LONG-LIVED CONNECTION INSTANCE
+            Connection connection = database.getConnection();
 
             // CREATES A STATEMENT INSTANCE
             try(Statement statement = connection.createStatement()) {
 
                 // EXECUTES A CREATE TABLE IF NOT EXISTS STATEMENT
-                statement.execute("CREATE TABLE IF NOT EXISTS taskitems " +
-                        "(shortDescription TEXT, details TEXT, deadline TEXT)");
+                statement.execute(CREATE_TABLE_STATEMENT);
+                migrateDBSchema(connection, statement);
 
-                // CREATES A ResultSet RESOURCE
-                try(ResultSet resultSet = statement.executeQuery("SELECT * FROM taskitems")) {
+                try {
+                    // BEFORE READING, SO A ROW CHANGED DURING THE READ IS READ AGAIN BY THE WATCHER
+                    resetDBChangeLog();
 
-                    // CREATES THE ObservableList
-                    taskItems = FXCollections.observableArrayList();
-
-                    // POPULATES THE ObservableList
-                    while(resultSet.next()) {
-                        String shortDescription = resultSet.getString("shortDescription");
-                        String details = resultSet.getString("details");
-                        String dateString = resultSet.getString("deadline");
-
-                        LocalDate date = LocalDate.parse(dateString, formatter);
-                        TaskItem taskItem = new TaskItem(shortDescription, details, date);
-                        taskItems.add(taskItem);
-                    }
+                    // POPULATES THE ObservableList, KEEPING THE TASK ITEMS THAT DIDN'T CHANGE
+                    List<TaskItem> loaded = readDBTaskItems(statement, !lazyDetails);
+                    metrics.source(DataSource.DB).recordBytesRead(payloadBytes(loaded));
+                    taskItems.reload(loaded);
 
                 } catch (SQLException e) {
                     System.out.println("Could create a resultset: " + e.getMessage());
+                    metrics.source(DataSource.DB).recordFailure(TaskMetrics.Operation.LOAD);
+                    taskItems.clear();
                 }
 
             } catch(SQLException e) {
                 System.out.println("Could create a database statement: " + e.getMessage());
+                metrics.source(DataSource.DB).recordFailure(TaskMetrics.Operation.LOAD);
+                taskItems.clear();
             }
 
         } catch (SQLException e) {
             System.out.println("Could not connect to the database: " + e.getMessage());
+            metrics.source(DataSource.DB).recordFailure(TaskMetrics.Operation.LOAD);
+            taskItems.clear();
         }
 
     }
 
-    public void  addTaskItem(TaskItem taskItem) {
+//    READS EVERY ROW OF THE taskitems TABLE IN id ORDER
+    private List<TaskItem> readDBTaskItems(Statement statement, boolean withDetails) throws SQLException {
+        int threads = getLoadThreads(DataSource.DB);
+        if (threads > 1) {
+            return readDBTaskItemsInParallel(statement, threads, withDetails);
+        }
 
-        switch(this.dataSource) {
-            case DB:
-                addDBTaskItem(taskItem);
-                System.out.println("Task item is added to the SQLite database");
-                break;
+        List<TaskItem> items = new ArrayList<>();
 
-            case XML:
-                addXMLTaskItem(taskItem);
-                System.out.println("Task items is added to the XLM file");
-                break;
+        // CREATES A ResultSet RESOURCE
+        try(ResultSet resultSet = statement.executeQuery(
+                withDetails ? SELECT_TASKS_STATEMENT : SELECT_TASKS_WITHOUT_DETAILS_STATEMENT)) {
+            while(resultSet.next()) {
+                items.add(readDBTaskItem(resultSet, withDetails));
+            }
         }
+        return items;
     }
 
-//    ADD TASK ITEM TO XML FILE
-    private void addXMLTaskItem(TaskItem taskItem) {
+//    SPLITS THE ids INTO RANGES AND READS EACH RANGE ON ITS OWN CONNECTION. SQLITE LETS READERS RUN SIDE BY SIDE
+    private List<TaskItem> readDBTaskItemsInParallel(Statement statement, int threads, boolean withDetails)
+            throws SQLException {
+        long minId;
+        long maxId;
+        try(ResultSet resultSet = statement.executeQuery("SELECT MIN(id), MAX(id) FROM taskitems")) {
+            resultSet.next();
+            minId = resultSet.getLong(1);
+            maxId = resultSet.getLong(2);
+        }
 
-        try {
-            // CREATES A DocumentBuilder FROM THE XML FILE
-            File inputFile = new File(XML_CONNECTION_STRING);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+        int chunks = threads * ParallelTaskDecoder.CHUNKS_PER_THREAD;
+        long rangeSize = Math.max(1, (maxId - minId + chunks) / chunks);
+        List<Long> rangeStarts = new ArrayList<>();
+        for (long start = minId; start <= maxId; start += rangeSize) {
+            rangeStarts.add(start);
+        }
 
-            // CREATES A Document FROM A DocumentBuilder
-            Document document = dBuilder.parse(inputFile);
+        try {
+            return ParallelTaskDecoder.decode(rangeStarts, threads, start -> {
+                List<TaskItem> items = new ArrayList<>();
+                try(Connection connection = database.openConnection();
+                    PreparedStatement select = connection.prepareStatement(
+                            withDetails ? SELECT_TASK_RANGE_STATEMENT : SELECT_TASK_RANGE_WITHOUT_DETAILS_STATEMENT)) {
+                    select.setLong(1, start);
+                    select.setLong(2, Math.min(start + rangeSize, maxId + 1));
+                    try(ResultSet resultSet = select.executeQuery()) {
+                        while(resultSet.next()) {
+                            items.add(readDBTaskItem(resultSet, withDetails));
+                        }
+                    }
+                }
+                return items;
+            });
 
-            String shortDescription = taskItem.getShortDescription();
-            String details = taskItem.getDetails();
-            String deadline = taskItem.getDeadline().format(formatter);
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e.getCause());
+        }
+    }
 
-            // RETURNS THE ROOT ELEMENT OF THE DOCUMENT
-            Element rootElement = document.getDocumentElement();
+//    READS THE COLUMNS id, shortDescription, details, deadline AND version IN THAT ORDER. A NULL TEXT IS EMPTY
+    static TaskItem readDBTaskItem(ResultSet resultSet) throws SQLException {
+        return readDBTaskItem(resultSet, true);
+    }
 
-            // APPENDS TASK ELEMENT TO THE ROOT ELEMENT
-            Element taskElement = document.createElement("task");
-            rootElement.appendChild(taskElement);
+//    WITHOUT DETAILS, THE details COLUMN WAS LEFT IN THE DATABASE AND THE TASK ITEM FETCHES IT WHEN ASKED
+    private static TaskItem readDBTaskItem(ResultSet resultSet, boolean withDetails) throws SQLException {
+        long id = resultSet.getLong(1);
+        String shortDescription = Objects.requireNonNullElse(resultSet.getString(2), "");
+        LocalDate date = LocalDate.ofEpochDay(resultSet.getLong(4));
+        TaskItem taskItem = withDetails
+                ? new TaskItem(id, shortDescription, Objects.requireNonNullElse(resultSet.getString(3), ""), date)
+                : TaskItem.withoutDetails(id, shortDescription, date);
+        taskItem.setVersion(resultSet.getInt(5));
+        return taskItem;
+    }
 
-            // APPENDS TASK ITEM ELEMENT TO THE TASK ELEMENT
-            Element shortDescriptionElement = document.createElement("shortDescription");
-            shortDescriptionElement.appendChild(document.createTextNode(shortDescription));
-            taskElement.appendChild(shortDescriptionElement);
+//    COPIES EVERY TASK ITEM OF ONE DATA SOURCE OVER THE CONTENT OF ANOTHER, FOR EXAMPLE THE XML FILE
+//    TO A SNAPSHOT. THE TASK IDS ARE KEPT. RELOADS THE TARGET IF IT IS THE DATA SOURCE IN USE
+    public void convertTaskItems(DataSource from, DataSource to) {
+        if (from == to) {
+            return;
+        }
 
-            Element detailsElement = document.createElement("details");
-            detailsElement.appendChild(document.createTextNode(details));
-            taskElement.appendChild(detailsElement);
+        // SAVES QUEUED CHANGES SO THE SOURCE IS COMPLETE
+        writer.flush();
 
-            Element deadlineElement = document.createElement("deadline");
-            deadlineElement.appendChild(document.createTextNode(deadline));
-            taskElement.appendChild(deadlineElement);
+        try {
+            List<TaskItem> items = readTaskItems(from);
+            switch (to) {
+                case DB:
+                    replaceDBTaskItems(items);
+                    break;
+                case XML:
+                    xmlJournal.replace(items);
+                    break;
+                case SNAPSHOT:
+                    snapshotJournal.replace(items);
+                    break;
+            }
+            System.out.println(items.size() + " task items are converted from " + from + " to " + to);
 
-            // WRITES THE CONTENT INTO XML FILE
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(document);
-            StreamResult result = new StreamResult(inputFile);
-            transformer.transform(source, result);
+        } catch (Exception e) {
+            System.out.println("Couldn't convert task items from " + from + " to " + to + ": " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
 
-            // UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-            taskItems.add(taskItem);
+        if (dataSource == to) {
+            loadTaskItems(to);
+        }
+    }
 
-        } catch (Exception e) {
-            System.out.println("Couldn't add task items to XML file:  " + e.getMessage());
+//    READS EVERY TASK ITEM OF A DATA SOURCE WITHOUT TOUCHING THE LOADED ONES
+    private List<TaskItem> readTaskItems(DataSource from) throws Exception {
+        switch (from) {
+            case DB:
+                synchronized (database) {
+                    Connection connection = database.getConnection();
+                    try(Statement statement = connection.createStatement()) {
+                        statement.execute(CREATE_TABLE_STATEMENT);
+                        migrateDBSchema(connection, statement);
+                        return readDBTaskItems(statement, true);
+                    }
+                }
+            case XML:
+                return xmlJournal.load();
+            default:
+                return snapshotJournal.load();
         }
+    }
 
+//    REPLACES EVERY ROW OF THE taskitems TABLE INSIDE ONE TRANSACTION
+    private void replaceDBTaskItems(List<TaskItem> items) throws SQLException {
+        database.retryIfBusy(() -> {
+            writeDBTaskItems(items);
+            return null;
+        });
+        for (TaskItem item : items) {
+            item.setVersion(0);
+        }
     }
 
-//    ADD TASK ITEM TO DATABASE
-    private void addDBTaskItem(TaskItem taskItem) {
+    private void writeDBTaskItems(List<TaskItem> items) throws SQLException {
+        synchronized (database) {
+            Connection connection = database.getConnection();
+            try(Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE_STATEMENT);
+                migrateDBSchema(connection, statement);
+            }
 
-        String shortDescription = taskItem.getShortDescription();
-        String details = taskItem.getDetails();
-        String deadline = taskItem.getDeadline().format(formatter);
+            connection.setAutoCommit(false);
+            try {
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("DELETE FROM taskitems");
+                }
+                for (TaskItem item : items) {
+                    insertDBRow(item, item.getId());
+                }
+                // EVERY ROW CHANGED. A WATCHER FINDS THE LOG PRUNED AND COMPARES EVERY ROW INSTEAD
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("DELETE FROM taskitems_changes");
+                }
+                connection.commit();
 
-        String insertTaskStatement = "INSERT INTO taskitems VALUES (\"" +
-                                    shortDescription + "\", \"" +
-                                    details + "\", \"" +
-                                    deadline + "\")";
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
 
-        try(Connection connection = DriverManager.getConnection(DB_CONNECTION_STRING);
-            PreparedStatement insertTaskitems = connection.prepareStatement(insertTaskStatement)) {
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
 
-            // EXECUTES INSERT INTO taskitems TABLE
-            insertTaskitems.execute();
+    public void addTaskItem(TaskItem taskItem) {
+        long start = System.nanoTime();
 
-            // UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-           taskItems.add(taskItem);
+        assignId(taskItem);
 
-        } catch (SQLException e) {
-            System.out.println("Couldn't open connection: " + e.getMessage());
-            e.printStackTrace();
-        }
+        // UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
+        taskItems.add(taskItem);
+
+        // QUEUES THE ADD FOR THE WRITER THREAD
+        localChanges++;
+        TaskBatch batch = new TaskBatch().add(taskItem);
+        writer.submit(batch);
+        history.record(batch);
+        refreshPagedTaskItems(batch);
+        recordChange(TaskMetrics.Operation.ADD, System.nanoTime() - start, 1);
     }
 
     public void deleteTaskItem(TaskItem taskItem) {
+        long start = System.nanoTime();
+
+        //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
+        taskItems.remove(taskItem);
+
+        // QUEUES THE DELETE FOR THE WRITER THREAD
+        localChanges++;
+        TaskBatch batch = new TaskBatch().delete(taskItem);
+        keepReplacedDetails(batch);
+        writer.submit(batch);
+        history.record(batch);
+        refreshPagedTaskItems(batch);
+        recordChange(TaskMetrics.Operation.DELETE, System.nanoTime() - start, 1);
+    }
 
-        switch(this.dataSource) {
-            case DB:
-                deleteDBTaskItem(taskItem);
-                System.out.println("Task item is deleted from the SQLite database");
-                break;
+    public void editTaskItem(TaskItem oldItem, TaskItem newItem) {
+        long start = System.nanoTime();
 
-            case XML:
-                deleteXMLTaskItem(taskItem);
-                System.out.println("Task items is deleted from the XLM file");
-                break;
+        // THE EDITED ITEM KEEPS THE ID OF THE ITEM IT REPLACES
+        newItem.setId(oldItem.getId());
+
+        //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
+        int index = taskItems.indexOf(oldItem);
+        if (index >= 0) {
+            taskItems.set(index,newItem);
         }
+
+        // QUEUES THE EDIT FOR THE WRITER THREAD
+        localChanges++;
+        TaskBatch batch = new TaskBatch().edit(oldItem, newItem);
+        keepReplacedDetails(batch);
+        writer.submit(batch);
+        history.record(batch);
+        refreshPagedTaskItems(batch);
+        recordChange(TaskMetrics.Operation.EDIT, System.nanoTime() - start, 1);
     }
 
-//    DELETE TASK ITEM FROM XML FILE
-    private void deleteXMLTaskItem(TaskItem taskItem) {
+//    RETURNS THE CONFLICT IF ANOTHER PROGRAM CHANGED OR DELETED THE TASK ITEM'S ROW SINCE IT WAS READ HERE,
+//    NULL IF IT DIDN'T OR THE DATA SOURCE ISN'T THE DATABASE. AN EDIT DIALOG ASKS BEFORE SAVING OVER IT
+    public TaskConflict findConflict(TaskItem taskItem) {
+        if (dataSource != DataSource.DB) {
+            return null;
+        }
 
+        // CHANGES STILL TO SAVE ARE CHECKED WHEN THEY ARE SAVED, AND A CONFLICT GOES TO THE ERROR HANDLER.
+        // OTHERWISE THE VERSION IS CURRENT, AS IT IS SET IN THE SAME LOCK AS THE ROW IS SAVED
+        if (writer.unsavedItems().containsKey(taskItem.getId())) {
+            return null;
+        }
         try {
-            // CREATES A DocumentBuilder FROM THE XML FILE
-            File inputFile = new File(XML_CONNECTION_STRING);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-
-            // CREATES A Document FROM A DocumentBuilder
-            Document document = dBuilder.parse(inputFile);
-
-            String shortDescription = taskItem.getShortDescription();
-
-            // RETURNS THE ROOT ELEMENT OF THE DOCUMENT
-            Element rootElement = document.getDocumentElement();
+            synchronized (database) {
+                PreparedStatement selectTask = database.prepare(SELECT_TASK_STATEMENT);
+                selectTask.setLong(1, taskItem.getId());
+                try(ResultSet resultSet = selectTask.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return new TaskConflict(taskItem, null);
+                    }
+                    TaskItem storedItem = readDBTaskItem(resultSet);
+                    return storedItem.getVersion() == taskItem.getVersion() ? null : new TaskConflict(taskItem, storedItem);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Couldn't check the task item for changes: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // CREATE A NODE LIST OF ELEMENTS BY TAG NAME
-            NodeList shortDescriptionNodeList = document.getElementsByTagName("shortDescription");
+//    SAVES THE NEW ITEM OVER WHATEVER THE OTHER PROGRAM SAVED. A DELETED TASK ITEM IS ADDED AGAIN
+    public void overwriteTaskItem(TaskConflict conflict, TaskItem newItem) {
+        if (conflict.isDeleted()) {
+            applyBatch(new TaskBatch().delete(conflict.getTaskItem()).add(newItem));
+            return;
+        }
+        conflict.getTaskItem().setVersion(conflict.getStoredItem().getVersion());
+        editTaskItem(conflict.getTaskItem(), newItem);
+    }
 
-            // ITERATES THROUGH EVERY NODE IN THE NodeList
-            for (int i = 0; i < shortDescriptionNodeList.getLength(); i++) {
+//    SHOWS WHAT THE OTHER PROGRAM SAVED INSTEAD OF THE TASK ITEM, WITHOUT WRITING ANYTHING.
+//    THE CHANGES MADE HERE CAN NO LONGER BE UNDONE, AS THEY MAY REFER TO IT
+    public void acceptConflict(TaskConflict conflict) {
+        if (conflict.isDeleted()) {
+            taskItems.apply(Collections.emptyList(), Collections.singletonList(conflict.getTaskItem().getId()));
+        } else {
+            taskItems.apply(Collections.singletonList(conflict.getStoredItem()), Collections.emptyList());
+        }
+        history.clear();
+        refreshPagedTaskItems();
+    }
 
-                Node shortDescriptionNode = shortDescriptionNodeList.item(i);
+//    ADDS MANY TASK ITEMS IN ONE TRANSACTION OR ONE JOURNAL WRITE
+    public void addTaskItems(Collection<TaskItem> items) {
+        TaskBatch batch = new TaskBatch();
+        for (TaskItem item : items) {
+            batch.add(item);
+        }
+        applyBatch(batch);
+    }
 
-                if (shortDescriptionNode.getTextContent().equals(shortDescription)) {
+//    DELETES MANY TASK ITEMS IN ONE TRANSACTION OR ONE JOURNAL WRITE
+    public void deleteTaskItems(Collection<TaskItem> items) {
+        TaskBatch batch = new TaskBatch();
+        for (TaskItem item : items) {
+            batch.delete(item);
+        }
+        applyBatch(batch);
+    }
 
-                    Node taskNode = shortDescriptionNode.getParentNode();
-                    rootElement.removeChild(taskNode);
+//    APPLIES EVERY OPERATION OF THE BATCH TOGETHER. THE ObservableList FIRES ONE COMBINED CHANGE
+    public void applyBatch(TaskBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        keepReplacedDetails(batch);
+        applyChanges(batch);
+        history.record(batch);
+    }
 
-                    //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-                    taskItems.remove(taskItem);
-                }
+//    A DELETED OR EDITED TASK ITEM WHOSE DETAILS WERE LEFT IN THE DATABASE READS THEM NOW, WHILE ITS ROW STILL
+//    HOLDS THEM. AN UNDO WRITES IT BACK AFTER THE ROW IS GONE OR HOLDS THE NEW DETAILS
+    private void keepReplacedDetails(TaskBatch batch) {
+        if (!isLazyDetails()) {
+            return;
+        }
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            if (operation.getOldItem() != null) {
+                operation.getOldItem().keepDetails();
             }
+        }
+    }
 
-            // WRITES THE CONTENT INTO XML FILE
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(document);
-            StreamResult result = new StreamResult(inputFile);
-            transformer.transform(source, result);
+//    REVERTS THE LAST CHANGE MADE HERE. RETURNS THE BATCH THAT REVERTED IT, OR NULL IF THERE IS NOTHING TO UNDO.
+//    A DELETED TASK ITEM COMES BACK WITH ITS ID. WHILE THE CHANGE IS STILL QUEUED, NOTHING IS WRITTEN AT ALL
+    public TaskBatch undo() {
+        TaskBatch inverse = history.undo();
+        if (inverse != null) {
+            applyChanges(inverse);
+        }
+        return inverse;
+    }
 
-        } catch (Exception e) {
-            System.out.println("Couldn't delete task items from XML file:  " + e.getMessage());
+//    MAKES THE LAST UNDONE CHANGE AGAIN. RETURNS IT, OR NULL IF THERE IS NOTHING TO REDO
+    public TaskBatch redo() {
+        TaskBatch batch = history.redo();
+        if (batch != null) {
+            applyChanges(batch);
         }
+        return batch;
+    }
 
+    public boolean canUndo() {
+        return history.canUndo();
     }
 
-//    DELETE TASK ITEM FROM DATABASE
-    private void deleteDBTaskItem(TaskItem taskItem) {
+    public boolean canRedo() {
+        return history.canRedo();
+    }
 
-        String shortDescription = taskItem.getShortDescription();
+    private void applyChanges(TaskBatch batch) {
+        long start = System.nanoTime();
+
+        int adds = 0;
+        int edits = 0;
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            switch (operation.getType()) {
+                case ADD:
+                    assignId(operation.getNewItem());
+                    adds++;
+                    break;
+                case EDIT:
+                    operation.getNewItem().setId(operation.getOldItem().getId());
+                    edits++;
+                    break;
+            }
+        }
 
-        String deleteTaskStatement = "DELETE FROM taskitems WHERE shortDescription=\"" + shortDescription + "\"";
+        //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
+        applyBatchToList(batch);
 
-        try(Connection connection = DriverManager.getConnection(DB_CONNECTION_STRING);
-            PreparedStatement deleteTaskitems = connection.prepareStatement(deleteTaskStatement)) {
+        // QUEUES THE WHOLE BATCH FOR THE WRITER THREAD
+        localChanges++;
+        writer.submit(batch);
+        refreshPagedTaskItems(batch);
 
-            // EXECUTES DELETE FROM taskitems TABLE
-            deleteTaskitems.execute();
-            //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-            taskItems.remove(taskItem);
+        // EVERY OPERATION OF THE BATCH GETS AN EQUAL SHARE OF THE TIME
+        long nanos = System.nanoTime() - start;
+        int deletes = batch.size() - adds - edits;
+        recordChange(TaskMetrics.Operation.ADD, nanos * adds / batch.size(), adds);
+        recordChange(TaskMetrics.Operation.EDIT, nanos * edits / batch.size(), edits);
+        recordChange(TaskMetrics.Operation.DELETE, nanos * deletes / batch.size(), deletes);
+    }
 
-        } catch (SQLException e) {
-            System.out.println("Couldn't open connection: " + e.getMessage());
-            e.printStackTrace();
+//    RECORDS THE TIME THE CALLER WAITED FOR AN ADD, EDIT OR DELETE. NOTHING IS RECORDED BEFORE A LOAD
+    private void recordChange(TaskMetrics.Operation operation, long nanos, int items) {
+        DataSource dataSource = this.dataSource;
+        if (dataSource != null) {
+            metrics.source(dataSource).record(operation, nanos, items);
         }
     }
 
-    public void editTaskItem(TaskItem oldItem, TaskItem newItem) {
+//    THE PAGED VIEW READS THE DATABASE. AN EDIT SHOWS IN THE LOADED PAGE AT ONCE, AND ADDS AND DELETES ONCE
+//    THE VIEW IS READ AGAIN AFTER THE WRITER HAS SAVED THEM
+    private void refreshPagedTaskItems(TaskBatch batch) {
+        PagedTaskList paged = pagedTaskItems;
+        if (paged == null) {
+            return;
+        }
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            if (operation.getType() == TaskBatch.Type.EDIT) {
+                paged.replace(operation.getOldItem(), operation.getNewItem());
+            }
+        }
+        refreshPagedTaskItems();
+    }
 
-        switch(this.dataSource) {
-            case DB:
-                editDBTaskItem(oldItem, newItem);
-                System.out.println("Task item is edited in the SQLite database");
-                break;
+//    READS THE PAGED VIEW AGAIN ON THE WATCH EXECUTOR ONCE THE QUEUED CHANGES ARE SAVED, WITHOUT WAITING FOR
+//    THE WRITER HERE. CHANGES SAVED TOGETHER ARE READ ONCE
+    private void refreshPagedTaskItems() {
+        PagedTaskList paged = pagedTaskItems;
+        if (paged == null) {
+            return;
+        }
+        writer.whenWritten(() -> {
+            if (pagedRefreshQueued.compareAndSet(false, true)) {
+                runOnWatchExecutor(() -> {
+                    pagedRefreshQueued.set(false);
+                    if (pagedTaskItems == paged) {
+                        paged.refresh();
+                    }
+                });
+            }
+        });
+    }
 
-            case XML:
-                editXMLTaskItem(oldItem, newItem);
-                System.out.println("Task items is edited in the XLM file");
-                break;
+//    RUNS ON THE JavaFX THREAD THROUGH THE WATCH EXECUTOR. WITHOUT ONE THERE IS NO JavaFX THREAD, SO IT RUNS HERE
+    private void runOnWatchExecutor(Runnable runnable) {
+        Executor executor = watchExecutor;
+        if (executor == null) {
+            runnable.run();
+        } else {
+            executor.execute(runnable);
         }
     }
 
-    private void editXMLTaskItem(TaskItem oldItem, TaskItem newItem) {
+//    GIVES A NEW TASK ITEM THE NEXT ID
+    private void assignId(TaskItem taskItem) {
+        if (taskItem.getId() == 0) {
+            taskItem.setId(++lastId);
+        }
+    }
+
+//    SETS THE HANDLER THAT IS TOLD ABOUT FAILED SAVES. IT IS CALLED ON THE WRITER THREAD
+    public void setPersistenceErrorHandler(Consumer<Exception> errorHandler) {
+        writer.setErrorHandler(errorHandler);
+    }
+
+//    BLOCKS UNTIL EVERY QUEUED CHANGE IS SAVED
+    public void flush() {
+        writer.flush();
+    }
+
+//    SAVES A BATCH DRAINED BY THE WRITER THREAD TO THE DATA SOURCE
+    private void persist(TaskBatch batch) throws Exception {
+        DataSource dataSource = this.dataSource;
+        if (dataSource == null) {
+            throw new IllegalStateException("No data source is loaded to save the changes to");
+        }
+        TaskMetrics.Source source = metrics.source(dataSource);
+        long start = System.nanoTime();
 
         try {
-            // CREATES A DocumentBuilder FROM THE XML FILE
-            File inputFile = new File(XML_CONNECTION_STRING);
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+            switch(dataSource) {
+                case DB:
+                    persistDBBatch(batch);
+                    source.recordBytesWritten(payloadBytes(batch));
+                    System.out.println(batch.size() + " task item changes are saved to the SQLite database");
+                    break;
+
+                case XML:
+                    xmlJournal.append(batch);
+                    System.out.println(batch.size() + " task item changes are saved to the XLM file");
+                    break;
+
+                case SNAPSHOT:
+                    snapshotJournal.append(batch);
+                    System.out.println(batch.size() + " task item changes are saved to the snapshot file");
+                    break;
+            }
+        } catch (Exception e) {
+            source.recordFailure(TaskMetrics.Operation.SAVE);
+            throw e;
+        }
+
+        // ONE SAMPLE PER BATCH. THIS IS THE WAIT OF EVERY CHANGE IN IT
+        source.record(TaskMetrics.Operation.SAVE, System.nanoTime() - start);
+    }
+
+//    THE DATABASE DOESN'T REPORT ITS I/O, SO ITS BYTES ARE THE ROW PAYLOAD. THE UTF-8 TEXT,
+//    PLUS THE id AND deadline
+    private static long payloadBytes(TaskItem item) {
+        return item.shortDescriptionBytes().length + (item.hasDetails() ? item.detailsBytes().length : 0) + 2 * Long.BYTES;
+    }
 
-            // CREATES A Document FROM A DocumentBuilder
-            Document document = dBuilder.parse(inputFile);
+    private static long payloadBytes(List<TaskItem> items) {
+        long bytes = 0;
+        for (TaskItem item : items) {
+            bytes += payloadBytes(item);
+        }
+        return bytes;
+    }
 
-            String oldShortDescription = oldItem.getShortDescription();
-            String shortDescription = newItem.getShortDescription();
-            String details = newItem.getDetails();
-            String deadline = newItem.getDeadline().format(formatter);
+    private static long payloadBytes(TaskBatch batch) {
+        long bytes = 0;
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            // A DELETE ONLY WRITES THE id
+            bytes += operation.getNewItem() != null ? payloadBytes(operation.getNewItem()) : Long.BYTES;
+        }
+        return bytes;
+    }
 
-            // RETURNS THE ROOT ELEMENT OF THE DOCUMENT
-            Element rootElement = document.getDocumentElement();
+//    SAVES A BATCH TO THE DATABASE INSIDE ONE TRANSACTION
+    private void persistDBBatch(TaskBatch batch) throws SQLException, TaskConflictException {
+        List<TaskConflict> conflicts = database.retryIfBusy(() -> writeDBBatch(batch));
+        if (!conflicts.isEmpty()) {
+            throw new TaskConflictException(conflicts);
+        }
+    }
 
-            // CREATE A NODE LIST OF ELEMENTS BY TAG NAME
-            NodeList shortDescriptionNodeList = document.getElementsByTagName("shortDescription");
+//    RETURNS THE EDITS AND DELETES THAT WEREN'T SAVED BECAUSE ANOTHER PROGRAM CHANGED THEIR ROWS FIRST.
+//    THE NEW ROW VERSIONS ARE GIVEN TO THE TASK ITEMS ONCE THE TRANSACTION IS COMMITTED
+    private List<TaskConflict> writeDBBatch(TaskBatch batch) throws SQLException {
+        Map<TaskItem, Integer> versions = new IdentityHashMap<>();
+        Map<TaskItem, Long> ids = new IdentityHashMap<>();
+        List<TaskItem> conflicted = new ArrayList<>();
+
+        synchronized (database) {
+            Connection connection = database.getConnection();
+            connection.setAutoCommit(false);
+            long logStart;
+            long logEnd;
+
+            try {
+                logStart = readDBLong(database.prepare(LAST_CHANGE_STATEMENT));
+                for (TaskBatch.Operation operation : batch.getOperations()) {
+                    TaskItem oldItem = operation.getOldItem();
+                    TaskItem newItem = operation.getNewItem();
+                    int version = oldItem == null ? 0 : versions.getOrDefault(oldItem, oldItem.getVersion());
+                    long id = savedId(ids, oldItem != null ? oldItem : newItem);
+                    switch (operation.getType()) {
+                        case ADD:
+                            long insertedId = executeDBInsert(newItem, id);
+                            if (insertedId != newItem.getId()) {
+                                ids.put(newItem, insertedId);
+                            }
+                            versions.put(newItem, 0);
+                            break;
+                        case EDIT:
+                            // THE NEW ITEM GOT THE ID OF THE OLD ONE, SO IT WAS REASSIGNED WITH IT
+                            if (id != newItem.getId()) {
+                                ids.put(newItem, id);
+                            }
+                            if (executeDBEdit(newItem, id, version)) {
+                                versions.put(newItem, version + 1);
+                            } else {
+                                conflicted.add(newItem);
+                            }
+                            break;
+                        case DELETE:
+                            if (!executeDBDelete(id, version)) {
+                                conflicted.add(oldItem);
+                            }
+                            break;
+                    }
+                }
+                logEnd = readDBLong(database.prepare(LAST_CHANGE_STATEMENT));
+                connection.commit();
 
-            // ITERATES THROUGH EVERY shortDescription NODE IN THE NodeList
-            for (int i = 0; i < shortDescriptionNodeList.getLength(); i++) {
+            } catch (SQLException e) {
+                // NOTHING OF THE BATCH IS KEPT
+                connection.rollback();
+                throw e;
 
-                Node shortDescriptionNode = shortDescriptionNodeList.item(i);
+            } finally {
+                connection.setAutoCommit(true);
+            }
 
-                if (shortDescriptionNode.getTextContent().equals(oldShortDescription)) {
+            // THE WATCHER DOESN'T READ THE ROWS SAVED HERE AGAIN, UNLESS CHANGES OF ANOTHER PROGRAM CAME BEFORE THEM
+            if (logStart == lastChangeSeq) {
+                lastChangeSeq = logEnd;
+            }
+            versions.forEach(TaskItem::setVersion);
+            if (!ids.isEmpty()) {
+                reassignedIds.putAll(ids);
+                publishReassignedIds(ids);
+            }
 
-                    Node shortDescriptionParentNode = shortDescriptionNode.getParentNode();
+            // THE ROWS AS THE OTHER PROGRAM LEFT THEM
+            List<TaskConflict> conflicts = new ArrayList<>(conflicted.size());
+            PreparedStatement selectTask = database.prepare(SELECT_TASK_STATEMENT);
+            for (TaskItem taskItem : conflicted) {
+                selectTask.setLong(1, savedId(ids, taskItem));
+                try(ResultSet resultSet = selectTask.executeQuery()) {
+                    conflicts.add(new TaskConflict(taskItem, resultSet.next() ? readDBTaskItem(resultSet) : null));
+                }
+            }
+            return conflicts;
+        }
+    }
 
-                    NodeList childNodesList = shortDescriptionParentNode.getChildNodes();
+//    THE ID THE TASK ITEM'S ROW HAS. ITS OWN, UNLESS IT WAS REASSIGNED BY THIS TRANSACTION OR AN EARLIER ONE
+//    AND THE JavaFX THREAD HASN'T BEEN GIVEN THE NEW ONE YET
+    private long savedId(Map<TaskItem, Long> ids, TaskItem taskItem) {
+        Long id = ids.get(taskItem);
+        if (id == null) {
+            id = reassignedIds.get(taskItem);
+        }
+        return id != null ? id : taskItem.getId();
+    }
 
-                    for (int j = 0; j < childNodesList.getLength(); j++) {
+//    GIVES THE TASK ITEMS THEIR NEW IDS ON THE JavaFX THREAD, WHERE THE LIST, ITS INDEXES AND THE API SNAPSHOT
+//    READ THEM. NEW IDS HANDED OUT THERE START ABOVE THEM. WITHOUT A WATCH EXECUTOR THERE IS NO JavaFX THREAD
+    private void publishReassignedIds(Map<TaskItem, Long> ids) {
+        runOnWatchExecutor(() -> {
+            for (Map.Entry<TaskItem, Long> entry : ids.entrySet()) {
+                TaskItem taskItem = entry.getKey();
+                taskItem.setId(entry.getValue());
+                lastId = Math.max(lastId, entry.getValue());
+                int index = taskItems.indexOf(taskItem);
+                if (index >= 0) {
+                    taskItems.fireUpdated(index);
+                }
+            }
+        });
+    }
 
-                        Node childNode = childNodesList.item(j);
+//    APPLIES A BATCH TO THE ObservableList WITH A SINGLE CHANGE NOTIFICATION
+    private void applyBatchToList(TaskBatch batch) {
 
-                        if (childNode.getNodeType() == Node.ELEMENT_NODE) {
+        boolean largeChange = taskItems.isLargeChange(batch.size());
 
-                            Element editTaskElement = (Element) childNode;
-                            String nodeName = editTaskElement.getNodeName();
+        if (batch.isAddOnly() && !largeChange) {
+            List<TaskItem> added = new ArrayList<>(batch.size());
+            for (TaskBatch.Operation operation : batch.getOperations()) {
+                added.add(operation.getNewItem());
+            }
+            taskItems.addAll(added);
+            return;
+        }
 
-                            switch(nodeName) {
-                                case "shortDescription" :
-                                    editTaskElement.setTextContent(shortDescription);
-                                    break;
-                                case "details" :
-                                    editTaskElement.setTextContent(details);
-                                    break;
-                                case "deadline" :
-                                    editTaskElement.setTextContent(deadline);
-                                    break;
+        // A FEW OPERATIONS ARE APPLIED ONE BY ONE AND REPORTED AS ONE CHANGE
+        if (!largeChange) {
+            taskItems.update(() -> {
+                for (TaskBatch.Operation operation : batch.getOperations()) {
+                    switch (operation.getType()) {
+                        case ADD:
+                            taskItems.add(operation.getNewItem());
+                            break;
+                        case EDIT:
+                            int index = taskItems.indexOf(operation.getOldItem());
+                            if (index >= 0) {
+                                taskItems.set(index, operation.getNewItem());
                             }
-                        }
+                            break;
+                        case DELETE:
+                            taskItems.remove(operation.getOldItem());
+                            break;
                     }
-
-                    //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-                    int index = taskItems.indexOf(oldItem);
-                    taskItems.set(index,newItem);
                 }
+            });
+            return;
+        }
 
+        // MANY OPERATIONS BUILD THE NEW LIST AND REPLACE THE OLD ONE, SO A SortedList SORTS ONCE INSTEAD OF
+        // INSERTING EVERY ITEM. POSITIONS ARE LOOKED UP INSTEAD OF SEARCHED
+        List<TaskItem> items = new ArrayList<>(taskItems);
+        Map<TaskItem, Integer> positions = new IdentityHashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(items.get(i), i);
+        }
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            Integer position;
+            switch (operation.getType()) {
+                case ADD:
+                    positions.put(operation.getNewItem(), items.size());
+                    items.add(operation.getNewItem());
+                    break;
+                case EDIT:
+                    position = positions.remove(operation.getOldItem());
+                    if (position != null) {
+                        items.set(position, operation.getNewItem());
+                        positions.put(operation.getNewItem(), position);
+                    }
+                    break;
+                case DELETE:
+                    // LEAVES A HOLE THAT IS DROPPED BELOW, SO THE OTHER POSITIONS STAY VALID
+                    position = positions.remove(operation.getOldItem());
+                    if (position != null) {
+                        items.set(position, null);
+                    }
+                    break;
             }
+        }
+        items.removeIf(Objects::isNull);
+        taskItems.setAll(items);
+    }
 
-            // WRITES THE CONTENT INTO XML FILE
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            DOMSource source = new DOMSource(document);
-            StreamResult result = new StreamResult(inputFile);
-            transformer.transform(source, result);
-
-        } catch (Exception e) {
-            System.out.println("Couldn't edit task items in XML file:  " + e.getMessage());
-            e.printStackTrace();
+//    INSERTS ONE ROW USING THE CACHED INSERT STATEMENT. ANOTHER PROGRAM MAY HAVE TAKEN THE ID SINCE IT WAS
+//    HANDED OUT HERE. THE ROW THEN GETS THE NEXT FREE ONE. RETURNS THE ID THE ROW WAS SAVED UNDER
+    private long executeDBInsert(TaskItem taskItem, long id) throws SQLException {
+        try {
+            insertDBRow(taskItem, id);
+            return id;
+        } catch (SQLException e) {
+            if (!TaskDatabase.isConstraintViolation(e)) {
+                throw e;
+            }
+            long freeId = readDBLong(database.prepare(MAX_ID_STATEMENT)) + 1;
+            System.out.println("Task id " + id + " is taken by another program, " + freeId + " is used instead");
+            insertDBRow(taskItem, freeId);
+            return freeId;
         }
+    }
 
+    private void insertDBRow(TaskItem taskItem, long id) throws SQLException {
+        PreparedStatement insertTaskitems = database.prepare(INSERT_TASK_STATEMENT);
+        insertTaskitems.setLong(1, id);
+        insertTaskitems.setString(2, taskItem.decodeShortDescription());
+        insertTaskitems.setString(3, taskItem.getDetails());
+        insertTaskitems.setLong(4, taskItem.getDeadlineEpochDay());
+
+        // EXECUTES INSERT INTO taskitems TABLE
+        insertTaskitems.executeUpdate();
     }
 
-//    EDIT TASK ITEM IN DATABASE
-    private void editDBTaskItem(TaskItem oldItem, TaskItem newItem) {
+//    DELETES THE ROW BY ITS PRIMARY KEY IF IT IS STILL AT THE VERSION. RETURNS FALSE IF ANOTHER PROGRAM
+//    CHANGED IT. A ROW ALREADY DELETED IS NO CONFLICT
+    private boolean executeDBDelete(long id, int version) throws SQLException {
+        PreparedStatement deleteTaskitems = database.prepare(DELETE_TASK_STATEMENT);
+        deleteTaskitems.setLong(1, id);
+        deleteTaskitems.setInt(2, version);
 
-        String shortDescription = newItem.getShortDescription();
-        String details = newItem.getDetails();
-        String deadline = newItem.getDeadline().format(formatter);
+        // EXECUTES DELETE FROM taskitems TABLE
+        if (deleteTaskitems.executeUpdate() > 0) {
+            return true;
+        }
+        PreparedStatement selectVersion = database.prepare(SELECT_VERSION_STATEMENT);
+        selectVersion.setLong(1, id);
+        try(ResultSet resultSet = selectVersion.executeQuery()) {
+            return !resultSet.next();
+        }
+    }
 
-        String oldShortDescription = oldItem.getShortDescription();
+//    UPDATES THE ROW BY ITS PRIMARY KEY IF IT IS STILL AT THE VERSION. RETURNS FALSE IF ANOTHER PROGRAM
+//    CHANGED OR DELETED IT
+    private boolean executeDBEdit(TaskItem newItem, long id, int version) throws SQLException {
+        PreparedStatement editTaskitems = database.prepare(EDIT_TASK_STATEMENT);
+        editTaskitems.setString(1, newItem.decodeShortDescription());
+        editTaskitems.setString(2, newItem.getDetails());
+        editTaskitems.setLong(3, newItem.getDeadlineEpochDay());
+        editTaskitems.setInt(4, version + 1);
+        editTaskitems.setLong(5, id);
+        editTaskitems.setInt(6, version);
+
+        // EXECUTES UPDATE taskitems TABLE
+        return editTaskitems.executeUpdate() > 0;
+    }
 
-        String editTaskStatement = "UPDATE taskitems SET shortDescription=\"" + shortDescription +
-                                                     "\", details=\"" + details +
-                                                     "\", deadline=\"" + deadline +
-                                                "\" WHERE shortDescription=\"" + oldShortDescription + "\"";
+//    BRINGS AN OLDER taskitems TABLE TO THE CURRENT SCHEMA IN ONE REBUILD AND CREATES THE (deadline, id) INDEX
+    private void migrateDBSchema(Connection connection, Statement statement) throws SQLException {
+
+        boolean hasId = false;
+        boolean hasVersion = false;
+        boolean textDeadline = false;
+        try(ResultSet columns = statement.executeQuery("PRAGMA table_info(taskitems)")) {
+            while (columns.next()) {
+                String name = columns.getString("name");
+                if ("id".equals(name)) {
+                    hasId = true;
+                } else if ("version".equals(name)) {
+                    hasVersion = true;
+                } else if ("deadline".equals(name)) {
+                    textDeadline = !"INTEGER".equalsIgnoreCase(columns.getString("type"));
+                }
+            }
+        }
 
-        try(Connection connection = DriverManager.getConnection(DB_CONNECTION_STRING);
-            PreparedStatement editTaskitems = connection.prepareStatement(editTaskStatement)) {
+        if (hasId && !textDeadline) {
+            // EVERY ROW STARTS AT VERSION 0. ADDING A COLUMN WITH A DEFAULT DOESN'T REWRITE THE TABLE
+            if (!hasVersion) {
+                statement.execute(ADD_VERSION_COLUMN_STATEMENT);
+            }
+            statement.execute(PagedTaskList.CREATE_INDEX_STATEMENT);
+            createDBSearchIndex(statement);
+            createDBChangeLog(statement);
+            return;
+        }
 
-            // EXECUTES UPDATE taskitems TABLE
-            editTaskitems.execute();
-            //UPDATES THE OBSERVABLE LIST THAT PROVIDES THE FXML ListView
-            int index = taskItems.indexOf(oldItem);
-            taskItems.set(index,newItem);
+        connection.setAutoCommit(false);
+        try {
+            // THE SEARCH INDEX IS REBUILT FROM THE NEW TABLE
+            statement.execute("DROP TABLE IF EXISTS " + SEARCH_TABLE);
+            statement.execute(RENAME_OLD_TABLE_STATEMENT);
+            statement.execute(CREATE_TABLE_STATEMENT);
+            statement.execute(String.format(COPY_OLD_ROWS_STATEMENT,
+                    textDeadline ? TEXT_DEADLINE_TO_EPOCH_DAY : "deadline"));
+            statement.execute(DROP_OLD_TABLE_STATEMENT);
+
+            // CREATED ONCE THE ROWS ARE IN, WHICH IS FASTER THAN UPDATING IT ROW BY ROW
+            statement.execute(PagedTaskList.CREATE_INDEX_STATEMENT);
+            createDBSearchIndex(statement);
+            createDBChangeLog(statement);
+            connection.commit();
+            System.out.println("The SQLite database is migrated to task ids and epoch day deadlines");
 
         } catch (SQLException e) {
-            System.out.println("Couldn't open connection: " + e.getMessage());
-            e.printStackTrace();
+            connection.rollback();
+            throw e;
+
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+//    CREATES THE FTS5 SEARCH INDEX AND ITS TRIGGERS. A NEW INDEX IS FILLED FROM THE ROWS ALREADY IN THE TABLE
+    private void createDBSearchIndex(Statement statement) throws SQLException {
+        boolean exists;
+        try(ResultSet resultSet = statement.executeQuery(
+                "SELECT 1 FROM sqlite_master WHERE type='table' AND name='" + SEARCH_TABLE + "'")) {
+            exists = resultSet.next();
+        }
+
+        for (String searchIndexStatement : CREATE_SEARCH_INDEX_STATEMENTS) {
+            statement.execute(searchIndexStatement);
+        }
+        if (!exists) {
+            statement.execute(REBUILD_SEARCH_INDEX_STATEMENT);
+        }
+    }
+
+    private void createDBChangeLog(Statement statement) throws SQLException {
+        for (String changeLogStatement : CREATE_CHANGE_LOG_STATEMENTS) {
+            statement.execute(changeLogStatement);
+        }
+    }
+
+//    SAVES QUEUED CHANGES, CLOSES THE DATABASE CONNECTIONS AND MERGES THE JOURNALS INTO THE XML AND SNAPSHOT FILES.
+//    IDLE TASK LISTS ARE CLOSED TOO
+    public void close() {
+        stopWatcher();
+        writer.flush();
+        database.close();
+        xmlJournal.close();
+        snapshotJournal.close();
+
+        List<TaskListShard> idle;
+        synchronized (idleTaskLists) {
+            idle = new ArrayList<>(idleTaskLists.values());
+            idleTaskLists.clear();
+        }
+        for (TaskListShard shard : idle) {
+            shard.close();
+        }
+        // THE FILES MAY BE OPENED AGAIN RIGHT AFTER, FOR EXAMPLE BY setDataDirectory()
+        synchronized (idleTaskLists) {
+            waitForClose(null);
         }
     }
 }
@@ -0,0 +1,144 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Long-lived SQLite connection owned by TaskData.
+ * Keeps one open connection and one cached PreparedStatement per SQL operation,
+ * so a single add, edit or delete does not reopen the database file or re-parse its statement.
+ * Every connection uses write-ahead logging, so readers in this or another process never block the writer,
+ * and waits for a lock held by another process instead of failing with "database is locked".
+ * The shared connection is used under its own monitor, which the JavaFX thread takes too, so it only waits briefly
+ * and retryIfBusy() does the longer waiting without holding the monitor.
+ */
+
+class TaskDatabase {
+
+//    HOW LONG A STATEMENT WAITS FOR ANOTHER CONNECTION'S LOCK, ON A SEPARATE CONNECTION AND ON THE SHARED ONE,
+//    AND HOW OFTEN A TRANSACTION THAT STILL FOUND THE DATABASE BUSY IS RUN AGAIN. THE WAITS BETWEEN RUNS DOUBLE
+//    UP TO A SECOND, SO A SAVE STILL WAITS ABOUT AS LONG AS ONE BUSY TIMEOUT OF A SEPARATE CONNECTION IN ALL
+    static final int BUSY_TIMEOUT_MILLIS = 5000;
+    private static final int SHARED_BUSY_TIMEOUT_MILLIS = 50;
+    private static final int MAX_BUSY_RETRIES = 10;
+    private static final long BUSY_RETRY_MILLIS = 100;
+    private static final long MAX_BUSY_RETRY_MILLIS = 1000;
+
+//    SQLITE_BUSY AND SQLITE_LOCKED. EXTENDED CODES KEEP THEM IN THEIR LOW BYTE
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    /**
+     * A transaction run by retryIfBusy(). Runs again from the start if the database was busy.
+     */
+    interface Transaction<T> {
+        T run() throws SQLException;
+    }
+
+    private final String connectionString;
+
+    private Connection connection;
+
+//    CACHED PREPARED STATEMENTS. KEYED BY THEIR SQL TEXT
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    TaskDatabase(String connectionString) {
+        this.connectionString = connectionString;
+    }
+
+//    RETURNS THE OPEN CONNECTION. OPENS IT ON FIRST USE OR AFTER A CLOSE
+    synchronized Connection getConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            statements.clear();
+            connection = open();
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout=" + SHARED_BUSY_TIMEOUT_MILLIS);
+            }
+        }
+        return connection;
+    }
+
+//    OPENS A SEPARATE CONNECTION, FOR EXAMPLE FOR A READER THREAD. THE CALLER CLOSES IT
+    Connection openConnection() throws SQLException {
+        return open();
+    }
+
+//    THE BUSY TIMEOUT IS SET FIRST, AS SWITCHING TO WAL WAITS FOR EVERY OTHER CONNECTION. THE SWITCH IS STORED
+//    IN THE FILE, SO IT HAPPENS ONCE. A DATABASE THAT CAN'T SWITCH KEEPS ITS JOURNAL MODE
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(connectionString);
+        try(Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+            try {
+                statement.execute("PRAGMA journal_mode=WAL");
+            } catch (SQLException e) {
+                System.out.println("Couldn't switch the database to WAL mode: " + e.getMessage());
+            }
+        }
+        return connection;
+    }
+
+//    RUNS THE TRANSACTION, AND RUNS IT AGAIN A FEW TIMES IF ANOTHER CONNECTION KEPT THE DATABASE BUSY
+//    PAST THE BUSY TIMEOUT. THE TRANSACTION ROLLS BACK BEFORE IT THROWS. NO LOCK IS HELD WHILE WAITING
+    <T> T retryIfBusy(Transaction<T> transaction) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.run();
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt > MAX_BUSY_RETRIES) {
+                    throw e;
+                }
+                System.out.println("The database is busy, trying again: " + e.getMessage());
+                try {
+                    Thread.sleep(Math.min(BUSY_RETRY_MILLIS << (attempt - 1), MAX_BUSY_RETRY_MILLIS));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    static boolean isBusy(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        return code == SQLITE_BUSY || code == SQLITE_LOCKED;
+    }
+
+    static boolean isConstraintViolation(SQLException e) {
+        return (e.getErrorCode() & 0xff) == SQLITE_CONSTRAINT;
+    }
+
+//    RETURNS THE CACHED PreparedStatement FOR THE SQL. PREPARES IT ON FIRST USE
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        Connection connection = getConnection();
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+//    CLOSES EVERY CACHED STATEMENT AND THE CONNECTION
+    synchronized void close() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.out.println("Couldn't close statement: " + e.getMessage());
+            }
+        }
+        statements.clear();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Couldn't close connection: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
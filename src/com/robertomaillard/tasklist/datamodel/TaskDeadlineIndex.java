@@ -0,0 +1,120 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Task items indexed by deadline.
+ * Listens to the TaskData ObservableList, so every add, edit and delete keeps it current,
+ * and answers date questions with TreeMap range lookups instead of scanning the list.
+ */
+
+class TaskDeadlineIndex implements ListChangeListener<TaskItem> {
+
+//    TASK ITEMS OF EACH DEADLINE IN THE ORDER THEY WERE INDEXED. A PLAIN LIST PER DAY COSTS A FEW BYTES PER TASK ITEM,
+//    WHERE A SET COST AN ENTRY OBJECT EACH. A DAY HOLDS FEW TASK ITEMS, SO REMOVING ONE SCANS LITTLE
+    private final TreeMap<LocalDate, List<TaskItem>> itemsByDeadline = new TreeMap<>();
+
+//    DEADLINE EACH TASK ITEM WAS INDEXED UNDER. NEEDED TO REMOVE ONE WHOSE DEADLINE WAS CHANGED IN PLACE
+    private final Map<TaskItem, LocalDate> indexedDeadlines = new IdentityHashMap<>();
+
+//    REBUILDS THE INDEX FROM THE LIST
+    void reset(List<? extends TaskItem> items) {
+        itemsByDeadline.clear();
+        indexedDeadlines.clear();
+        for (TaskItem item : items) {
+            add(item);
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends TaskItem> change) {
+        ObservableList<? extends TaskItem> list = change.getList();
+
+        // A RELOAD OR A LARGE BATCH REPLACES THE WHOLE LIST. REBUILDING IS CHEAPER THAN REMOVING EVERY ITEM ONE BY ONE
+        if (TaskItemList.isReplacement(change, indexedDeadlines.size())) {
+            reset(list);
+            return;
+        }
+
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            if (change.wasUpdated()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    TaskItem item = list.get(i);
+                    remove(item);
+                    add(item);
+                }
+                continue;
+            }
+            for (TaskItem removed : change.getRemoved()) {
+                remove(removed);
+            }
+            for (TaskItem added : change.getAddedSubList()) {
+                add(added);
+            }
+        }
+    }
+
+    List<TaskItem> dueOn(LocalDate date) {
+        List<TaskItem> items = itemsByDeadline.get(date);
+        return items == null ? Collections.emptyList() : new ArrayList<>(items);
+    }
+
+//    EVERY TASK ITEM DUE BEFORE THE DATE, EARLIEST FIRST
+    List<TaskItem> dueBefore(LocalDate date) {
+        return flatten(itemsByDeadline.headMap(date, false).values(), Integer.MAX_VALUE);
+    }
+
+//    THE FIRST COUNT TASK ITEMS DUE ON OR AFTER THE DATE, EARLIEST FIRST
+    List<TaskItem> dueFrom(LocalDate date, int count) {
+        return flatten(itemsByDeadline.tailMap(date, true).values(), count);
+    }
+
+//    THE FIRST TASK ITEM DUE ON OR AFTER THE DATE, OR NULL
+    TaskItem firstOnOrAfter(LocalDate date) {
+        Map.Entry<LocalDate, List<TaskItem>> entry = itemsByDeadline.ceilingEntry(date);
+        return entry == null ? null : entry.getValue().get(0);
+    }
+
+    private void add(TaskItem item) {
+        LocalDate deadline = item.getDeadline();
+        itemsByDeadline.computeIfAbsent(deadline, key -> new ArrayList<>(4)).add(item);
+        indexedDeadlines.put(item, deadline);
+    }
+
+    private void remove(TaskItem item) {
+        LocalDate deadline = indexedDeadlines.remove(item);
+        if (deadline == null) {
+            return;
+        }
+        List<TaskItem> items = itemsByDeadline.get(deadline);
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == item) {
+                items.remove(i);
+                break;
+            }
+        }
+        if (items.isEmpty()) {
+            itemsByDeadline.remove(deadline);
+        }
+    }
+
+    private static List<TaskItem> flatten(Collection<List<TaskItem>> groups, int limit) {
+        List<TaskItem> result = new ArrayList<>();
+        for (List<TaskItem> group : groups) {
+            for (TaskItem item : group) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+
+/**
+ * Undo and redo log of the changes made to the task list on screen. Every change is kept as the batch that made it,
+ * and undone by applying its inverse. Only the last few changes are kept, so the log holds a bounded
+ * number of task items.
+ */
+
+class TaskHistory {
+
+    private final int limit;
+
+//    NEWEST FIRST
+    private final Deque<TaskBatch> undoable = new ArrayDeque<>();
+    private final Deque<TaskBatch> redoable = new ArrayDeque<>();
+
+    TaskHistory(int limit) {
+        this.limit = limit;
+    }
+
+//    KEEPS A COPY OF THE BATCH, SO THE CALLER CAN'T CHANGE IT ONCE APPLIED. A NEW CHANGE CAN'T BE FOLLOWED BY A REDO
+    void record(TaskBatch batch) {
+        redoable.clear();
+        undoable.push(new TaskBatch(new ArrayList<>(batch.getOperations())));
+        if (undoable.size() > limit) {
+            undoable.removeLast();
+        }
+    }
+
+//    RETURNS THE BATCH THAT REVERTS THE LAST CHANGE, OR NULL IF THERE IS NONE
+    TaskBatch undo() {
+        TaskBatch batch = undoable.poll();
+        if (batch == null) {
+            return null;
+        }
+        redoable.push(batch);
+        return batch.inverse();
+    }
+
+//    RETURNS THE LAST CHANGE UNDONE, OR NULL IF THERE IS NONE
+    TaskBatch redo() {
+        TaskBatch batch = redoable.poll();
+        if (batch == null) {
+            return null;
+        }
+        undoable.push(batch);
+        return batch;
+    }
+
+    boolean canUndo() {
+        return !undoable.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redoable.isEmpty();
+    }
+
+    void clear() {
+        undoable.clear();
+        redoable.clear();
+    }
+}
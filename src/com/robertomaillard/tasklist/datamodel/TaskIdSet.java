@@ -0,0 +1,37 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Set of task ids used as a FilteredList predicate.
+ * Task ids are handed out from 1 upwards, so they are kept as bits. Testing an item costs a bit lookup
+ * instead of boxing its id for a HashSet, which matters when a FilteredList tests every item on each keystroke.
+ */
+
+class TaskIdSet implements Predicate<TaskItem> {
+
+    private final BitSet ids = new BitSet();
+
+//    IDS TOO LARGE FOR THE BITS. ONLY A DATABASE WITH HAND-MADE ROWIDS HAS THEM
+    private final Set<Long> largeIds = new HashSet<>();
+
+    void add(long id) {
+        if (id >= 0 && id <= Integer.MAX_VALUE) {
+            ids.set((int) id);
+        } else {
+            largeIds.add(id);
+        }
+    }
+
+    @Override
+    public boolean test(TaskItem taskItem) {
+        long id = taskItem.getId();
+        if (id >= 0 && id <= Integer.MAX_VALUE) {
+            return ids.get((int) id);
+        }
+        return largeIds.contains(id);
+    }
+}
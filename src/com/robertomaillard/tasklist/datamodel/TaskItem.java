@@ -1,45 +1,220 @@
 package com.robertomaillard.tasklist.datamodel;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Created by Roberto Maillard on 17/9/2019.
  * Task item Class.
+ * Kept compact for lists of millions: the text is held as UTF-8 bytes, shared with every other task item
+ * holding the same text seen recently, and the deadline as its epoch day. The short description is decoded once
+ * it is asked for and kept, so list cells redrawn while scrolling allocate nothing. The details are decoded
+ * on each call, and every task item due the same day hands out the same LocalDate.
+ * A task item loaded without its details fetches them from the database when they are asked for.
  */
 
 public class TaskItem {
 
-    private String shortDescription;
-    private String details;
-    private LocalDate deadline;
+    /**
+     * Fetches the details of a task item loaded without them. TaskData sets one when it leaves the details
+     * in the database.
+     */
+    interface DetailsLoader {
+        String loadDetails(TaskItem taskItem);
+    }
+
+    private static volatile DetailsLoader detailsLoader;
+
+    private static final byte[] EMPTY = new byte[0];
+
+//    RECENTLY STORED TEXTS BY HASH. A TEXT EQUAL TO THE ONE IN ITS SLOT REUSES ITS BYTES, SO REPEATED DETAILS
+//    ARE STORED ONCE. A SLOT HOLDS THE LAST TEXT THAT HASHED TO IT, SO THE TABLE NEVER GROWS
+    private static final int TEXT_CACHE_SIZE = 1 << 12;
+    private static final AtomicReferenceArray<byte[]> TEXT_CACHE = new AtomicReferenceArray<>(TEXT_CACHE_SIZE);
+
+//    ONE LocalDate PER DAY FROM 1970 TO 2199, CREATED ON FIRST USE. OTHER DAYS GET A NEW ONE EACH TIME
+    private static final int CACHED_DAYS = (int) LocalDate.of(2200, 1, 1).toEpochDay();
+    private static final AtomicReferenceArray<LocalDate> DATE_CACHE = new AtomicReferenceArray<>(CACHED_DAYS);
+
+//    GENERATED BY TaskData. 0 UNTIL THE ITEM IS ADDED
+    private long id;
+    private byte[] shortDescription;
+//    THE SHORT DESCRIPTION DECODED, ONCE getShortDescription() WAS CALLED. IT FITS THE PADDING OF THE OBJECT,
+//    SO A TASK ITEM NEVER SHOWN COSTS NO MORE
+    private String shortDescriptionText;
+//    NULL WHEN THE DETAILS WERE LEFT IN THE DATABASE. THE DETAILS LOADER FETCHES THEM ON EACH CALL, FROM ITS CACHE
+    private byte[] details;
+    private int deadline;
+//    THE version OF ITS DATABASE ROW WHEN IT WAS READ OR LAST SAVED. AN EDIT OR DELETE ONLY SAVES OVER THAT VERSION
+    private int version;
 
     public TaskItem(String shortDescription, String details, LocalDate deadline) {
-        this.shortDescription = shortDescription;
-        this.details = details;
+        this.shortDescription = encode(shortDescription);
+        this.details = encode(details);
+        this.deadline = Math.toIntExact(deadline.toEpochDay());
+    }
+
+    public TaskItem(long id, String shortDescription, String details, LocalDate deadline) {
+        this(shortDescription, details, deadline);
+        this.id = id;
+    }
+
+//    FOR READERS THAT ALREADY HOLD THE UTF-8 BYTES AND THE EPOCH DAY
+    TaskItem(long id, byte[] shortDescription, byte[] details, int deadline) {
+        this.id = id;
+        this.shortDescription = share(shortDescription);
+        this.details = share(details);
         this.deadline = deadline;
     }
 
+//    SHARES THE BYTES, WHICH ARE NEVER CHANGED
+    private TaskItem(TaskItem other) {
+        this.id = other.id;
+        this.shortDescription = other.shortDescription;
+        this.shortDescriptionText = other.shortDescriptionText;
+        this.details = other.details;
+        this.deadline = other.deadline;
+        this.version = other.version;
+    }
+
+//    A TASK ITEM WHOSE DETAILS ARE FETCHED WHEN ASKED FOR
+    static TaskItem withoutDetails(long id, String shortDescription, LocalDate deadline) {
+        return new TaskItem(id, encode(shortDescription), null,
+                Math.toIntExact(deadline.toEpochDay()));
+    }
+
+    static void setDetailsLoader(DetailsLoader loader) {
+        detailsLoader = loader;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
     public String getShortDescription() {
-        return shortDescription;
+        String text = shortDescriptionText;
+        if (text == null) {
+            text = new String(shortDescription, StandardCharsets.UTF_8);
+            shortDescriptionText = text;
+        }
+        return text;
+    }
+
+//    THE SHORT DESCRIPTION WITHOUT KEEPING IT. FOR CODE THAT READS EVERY TASK ITEM ONCE, LIKE THE WRITERS
+    String decodeShortDescription() {
+        String text = shortDescriptionText;
+        return text != null ? text : new String(shortDescription, StandardCharsets.UTF_8);
     }
 
     public void setShortDescription(String shortDescription) {
-        this.shortDescription = shortDescription;
+        this.shortDescription = encode(shortDescription);
+        this.shortDescriptionText = null;
     }
 
     public String getDetails() {
-        return details;
+        if (details == null) {
+            DetailsLoader loader = detailsLoader;
+            return loader == null ? "" : loader.loadDetails(this);
+        }
+        return new String(details, StandardCharsets.UTF_8);
     }
 
     public void setDetails(String details) {
-        this.details = details;
+        this.details = encode(details);
     }
 
     public LocalDate getDeadline() {
-        return deadline;
+        return dateOf(deadline);
     }
 
     public void setDeadline(LocalDate deadline) {
-        this.deadline = deadline;
+        this.deadline = Math.toIntExact(deadline.toEpochDay());
+    }
+
+//    THE DEADLINE AS DAYS SINCE 1970-01-01. COMPARES WITHOUT A LocalDate
+    public int getDeadlineEpochDay() {
+        return deadline;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+//    THE UTF-8 BYTES OF THE TEXT. SHARED, SO NEVER CHANGED
+    byte[] shortDescriptionBytes() {
+        return shortDescription;
+    }
+
+//    FETCHES DETAILS LEFT IN THE DATABASE
+    byte[] detailsBytes() {
+        return details != null ? details : getDetails().getBytes(StandardCharsets.UTF_8);
+    }
+
+//    FALSE IF THE DETAILS WERE LEFT IN THE DATABASE
+    boolean hasDetails() {
+        return details != null;
+    }
+
+//    FETCHES DETAILS LEFT IN THE DATABASE AND KEEPS THEM, SO THEY OUTLIVE THE ROW THEY WERE READ FROM
+    void keepDetails() {
+        if (details == null) {
+            details = encode(getDetails());
+        }
+    }
+
+//    A COPY THE LATER CHANGES TO THIS TASK ITEM, LIKE A NEW ID, DON'T REACH
+    TaskItem copy() {
+        return new TaskItem(this);
+    }
+
+//    RETURNS TRUE IF BOTH TASK ITEMS HOLD THE SAME TEXT AND DEADLINE, COMPARING THE BYTES WITHOUT DECODING THEM
+    boolean hasSameContent(TaskItem other) {
+        return deadline == other.deadline
+                && Arrays.equals(shortDescription, other.shortDescription)
+                && Arrays.equals(details, other.details);
+    }
+
+//    A NULL TEXT IS STORED EMPTY
+    private static byte[] encode(String text) {
+        return text == null ? EMPTY : share(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+//    RETURNS THE CACHED BYTES EQUAL TO THESE, OR CACHES THESE
+    private static byte[] share(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0) {
+            return EMPTY;
+        }
+        int slot = Arrays.hashCode(bytes) & (TEXT_CACHE_SIZE - 1);
+        byte[] cached = TEXT_CACHE.get(slot);
+        if (cached != null && Arrays.equals(cached, bytes)) {
+            return cached;
+        }
+        TEXT_CACHE.set(slot, bytes);
+        return bytes;
+    }
+
+    static LocalDate dateOf(int epochDay) {
+        if (epochDay < 0 || epochDay >= CACHED_DAYS) {
+            return LocalDate.ofEpochDay(epochDay);
+        }
+        LocalDate date = DATE_CACHE.get(epochDay);
+        if (date == null) {
+            date = LocalDate.ofEpochDay(epochDay);
+            DATE_CACHE.set(epochDay, date);
+        }
+        return date;
     }
 }
@@ -0,0 +1,256 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.*;
+
+/**
+ * The one ObservableList of task items TaskData hands out. It is never replaced, so listeners and the
+ * FilteredList and SortedList bound to it stay attached across reloads.
+ * Bulk changes fire a single change event. A change touching many task items is sent as one replacement
+ * of the whole list, because SortedList sorts a replaced list once but inserts changed items one by one.
+ */
+
+public final class TaskItemList extends ModifiableObservableListBase<TaskItem> {
+
+//    SMALLEST CHANGE SENT AS A REPLACEMENT OF THE WHOLE LIST. A SortedList PAYS A SCAN OF ITS MAPPING FOR EACH
+//    ITEM CHANGED IN PLACE AND ONE SORT FOR A REPLACEMENT, SO THE BREAK-EVEN POINT BARELY MOVES WITH THE SIZE
+    private static final int LARGE_CHANGE = 128;
+
+    private final ArrayList<TaskItem> items = new ArrayList<>();
+
+    TaskItemList() {
+    }
+
+    @Override
+    public TaskItem get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    protected void doAdd(int index, TaskItem element) {
+        items.add(index, element);
+    }
+
+    @Override
+    protected TaskItem doSet(int index, TaskItem element) {
+        return items.set(index, element);
+    }
+
+    @Override
+    protected TaskItem doRemove(int index) {
+        return items.remove(index);
+    }
+
+//    REPLACES EVERY TASK ITEM WITH ONE CHANGE. THE BASE CLASS WOULD REMOVE THEM ONE AT A TIME
+    @Override
+    public boolean setAll(Collection<? extends TaskItem> col) {
+        // COPIED FIRST, SO A COLLECTION BACKED BY THIS LIST ISN'T EMPTIED BY THE clear()
+        List<TaskItem> added = new ArrayList<>(col);
+        List<TaskItem> removed = new ArrayList<>(items);
+        items.clear();
+        items.addAll(added);
+
+        beginChange();
+        if (!removed.isEmpty()) {
+            nextRemove(0, removed);
+        }
+        if (!items.isEmpty()) {
+            nextAdd(0, items.size());
+        }
+        endChange();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        setAll(Collections.emptyList());
+    }
+
+//    APPENDS WITH ONE CONTIGUOUS ADD
+    @Override
+    public boolean addAll(Collection<? extends TaskItem> col) {
+        if (col.isEmpty()) {
+            return false;
+        }
+        int from = items.size();
+        items.addAll(col);
+
+        beginChange();
+        nextAdd(from, items.size());
+        endChange();
+        return true;
+    }
+
+//    APPENDS A BATCH OF A PROGRESSIVE LOAD. A LARGE ONE IS SENT AS A REPLACEMENT OF THE WHOLE LIST,
+//    SO A SortedList SORTS ONCE INSTEAD OF INSERTING EVERY ITEM OF THE BATCH
+    void append(Collection<? extends TaskItem> col) {
+        if (items.isEmpty() || !isLargeChange(col.size())) {
+            addAll(col);
+            return;
+        }
+        List<TaskItem> appended = new ArrayList<>(items.size() + col.size());
+        appended.addAll(items);
+        appended.addAll(col);
+        setAll(appended);
+    }
+
+//    RUNS EVERY MUTATION OF THE RUNNABLE INSIDE ONE CHANGE. LISTENERS ARE TOLD ONCE, AT THE END
+    void update(Runnable mutations) {
+        beginChange();
+        try {
+            mutations.run();
+        } finally {
+            endChange();
+        }
+    }
+
+//    TELLS LISTENERS THAT THE TASK ITEM AT THE INDEX CHANGED IN PLACE
+    void fireUpdated(int index) {
+        beginChange();
+        nextUpdate(index);
+        endChange();
+    }
+
+//    RETURNS TRUE IF A CHANGE OF THIS MANY TASK ITEMS IS CHEAPER TO SEND AS A REPLACEMENT OF THE WHOLE LIST
+    boolean isLargeChange(int changes) {
+        return changes >= LARGE_CHANGE;
+    }
+
+//    MAKES THE LIST MATCH THE LOADED TASK ITEMS. TASK ITEMS ARE MATCHED BY ID, AND AN UNCHANGED ONE KEEPS
+//    ITS OBJECT, SO SELECTIONS AND INDEXES POINTING AT IT STAY VALID. A FEW CHANGES ARE APPLIED AS ONE MINIMAL
+//    CHANGE. MANY ARE APPLIED AS ONE REPLACEMENT IN THE LOADED ORDER
+    void reload(List<TaskItem> loaded) {
+        Map<Long, Integer> positions = new HashMap<>(items.size() * 2);
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(items.get(i).getId(), i);
+        }
+
+        List<TaskItem> merged = new ArrayList<>(loaded.size());
+        Map<Integer, TaskItem> changed = new TreeMap<>();
+        List<TaskItem> added = new ArrayList<>();
+        boolean[] kept = new boolean[items.size()];
+
+        for (TaskItem item : loaded) {
+            Integer position = positions.get(item.getId());
+            if (position == null || kept[position]) {
+                added.add(item);
+                merged.add(item);
+                continue;
+            }
+            kept[position] = true;
+            TaskItem current = items.get(position);
+            if (sameContent(current, item)) {
+                merged.add(current);
+            } else {
+                changed.put(position, item);
+                merged.add(item);
+            }
+        }
+
+        int removedCount = 0;
+        for (boolean k : kept) {
+            if (!k) {
+                removedCount++;
+            }
+        }
+
+        int changes = changed.size() + added.size() + removedCount;
+        if (changes == 0) {
+            return;
+        }
+        if (isLargeChange(changes)) {
+            setAll(merged);
+            return;
+        }
+
+        update(() -> {
+            for (Map.Entry<Integer, TaskItem> entry : changed.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+            // FROM THE END, SO THE POSITIONS STILL TO REMOVE DON'T MOVE
+            for (int i = kept.length - 1; i >= 0; i--) {
+                if (!kept[i]) {
+                    remove(i);
+                }
+            }
+            addAll(added);
+        });
+    }
+
+//    APPLIES CHANGES MADE ELSEWHERE. AN UPSERTED TASK ITEM REPLACES THE ONE WITH ITS ID, OR IS ADDED IF THERE IS NONE.
+//    ONE WITH THE SAME CONTENT IS SKIPPED, SO THE OBJECT ON THE LIST, AND ANY SELECTION OF IT, IS KEPT
+    void apply(Collection<TaskItem> upserted, Collection<Long> removedIds) {
+        if (upserted.isEmpty() && removedIds.isEmpty()) {
+            return;
+        }
+        Map<Long, TaskItem> upsertedById = new HashMap<>(upserted.size() * 2);
+        for (TaskItem item : upserted) {
+            upsertedById.put(item.getId(), item);
+        }
+        Set<Long> removed = new HashSet<>(removedIds);
+
+        Map<Integer, TaskItem> changed = new TreeMap<>();
+        List<Integer> removedPositions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Long id = items.get(i).getId();
+            if (removed.contains(id)) {
+                removedPositions.add(i);
+                continue;
+            }
+            TaskItem item = upsertedById.remove(id);
+            if (item != null && !sameContent(items.get(i), item)) {
+                changed.put(i, item);
+            }
+        }
+        // WHAT IS LEFT HAS NO TASK ITEM ON THE LIST YET
+        List<TaskItem> added = new ArrayList<>(upsertedById.values());
+
+        int changes = changed.size() + removedPositions.size() + added.size();
+        if (changes == 0) {
+            return;
+        }
+        if (isLargeChange(changes)) {
+            List<TaskItem> merged = new ArrayList<>(items);
+            for (Map.Entry<Integer, TaskItem> entry : changed.entrySet()) {
+                merged.set(entry.getKey(), entry.getValue());
+            }
+            for (int position : removedPositions) {
+                merged.set(position, null);
+            }
+            merged.removeIf(Objects::isNull);
+            merged.addAll(added);
+            setAll(merged);
+            return;
+        }
+
+        update(() -> {
+            for (Map.Entry<Integer, TaskItem> entry : changed.entrySet()) {
+                set(entry.getKey(), entry.getValue());
+            }
+            for (int i = removedPositions.size() - 1; i >= 0; i--) {
+                remove((int) removedPositions.get(i));
+            }
+            addAll(added);
+        });
+    }
+
+//    RETURNS TRUE IF THE CHANGE REPLACED EVERY TASK ITEM A LISTENER HAD SEEN, SO IT CAN REBUILD INSTEAD
+    static boolean isReplacement(ListChangeListener.Change<? extends TaskItem> change, int seen) {
+        boolean replacement = change.next() && change.getFrom() == 0 && change.getRemovedSize() == seen
+                && change.getAddedSize() == change.getList().size() && !change.next();
+        change.reset();
+        return replacement;
+    }
+
+//    RETURNS TRUE IF BOTH TASK ITEMS HOLD THE SAME TEXT, DEADLINE AND ROW VERSION. TaskItem KEEPS IDENTITY EQUALITY
+    static boolean sameContent(TaskItem a, TaskItem b) {
+        return a.hasSameContent(b) && a.getVersion() == b.getVersion();
+    }
+}
@@ -0,0 +1,496 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal for a file holding every task item.
+ * Every add, edit and delete is appended as one line to the current journal segment
+ * (for example TaskListItems.xml.journal.N), so a write costs the same whatever the size of the list.
+ * Segments are merged into the file in the background and at shutdown. The file records the last
+ * merged segment as its generation, so a crash during a merge never applies a segment twice.
+ * Records refer to task items by id. Subclasses read and write the file format.
+ */
+
+abstract class TaskJournal {
+
+//    RECORDS IN THE CURRENT SEGMENT BEFORE A BACKGROUND MERGE IS STARTED
+    private static final int COMPACT_THRESHOLD = 10_000;
+
+    private static final char ADD_RECORD = 'A';
+    private static final char EDIT_RECORD = 'E';
+    private static final char DELETE_RECORD = 'D';
+
+    private final File file;
+    private final String name;
+    private final String segmentPrefix;
+
+    private Writer writer;
+    private long currentSegment;
+    private int segmentRecords;
+
+//    SERIALIZES MERGES. APPENDS ONLY TAKE THE JOURNAL LOCK
+    private final Object compactionLock = new Object();
+
+    private final ExecutorService compactionExecutor;
+
+//    THREADS THAT DECODE THE FILE. 1 READS IT ON THE CALLING THREAD
+    private volatile int readThreads = 1;
+
+//    MODIFICATION TIME AND LENGTH OF THE FILE AS LAST READ OR WRITTEN HERE. ANYTHING ELSE WAS WRITTEN BY ANOTHER PROGRAM
+    private volatile long knownModified = -1;
+    private volatile long knownLength = -1;
+
+//    COUNTS THE BYTES READ AND WRITTEN. TaskData HANDS IN THE METRICS OF ITS DATA SOURCE
+    private volatile TaskMetrics.Source metrics = new TaskMetrics.Source();
+
+    TaskJournal(File file, String name) {
+        this.file = file;
+        this.name = name;
+        this.segmentPrefix = file.getName() + ".journal.";
+        // THE THREAD ENDS WHEN IDLE, SO A JOURNAL OF A TASK LIST THAT WAS CLOSED LEAVES NO THREAD BEHIND
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "TaskList " + name + " journal compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.compactionExecutor = executor;
+    }
+
+    void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    int getReadThreads() {
+        return readThreads;
+    }
+
+    void setMetrics(TaskMetrics.Source metrics) {
+        this.metrics = metrics;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+//    RETURNS TRUE IF ANOTHER PROGRAM CHANGED THE FILE SINCE IT WAS LAST READ OR WRITTEN HERE
+    boolean isChangedOnDisk() {
+        return file.lastModified() != knownModified || file.length() != knownLength;
+    }
+
+//    READS THE FILE. RETURNS ITS GENERATION, THE LAST SEGMENT MERGED INTO IT
+    abstract long read(File file, Consumer<TaskItem> consumer) throws IOException;
+
+//    WRITES EVERY TASK ITEM AND THE GENERATION TO A NEW FILE
+    abstract void write(File file, List<TaskItem> items, long generation) throws IOException;
+
+//    READS THE FILE, REPLAYS EVERY SEGMENT NOT YET MERGED AND OPENS A NEW SEGMENT FOR APPENDS
+    synchronized List<TaskItem> load() throws IOException {
+        closeWriter();
+
+        // NOTED BEFORE READING. A CHANGE MADE DURING THE READ IS SEEN AS A CHANGE ON DISK LATER
+        rememberFile();
+        List<TaskItem> items = new ArrayList<>();
+        long generation = readFile(items);
+
+        if (assignMissingIds(items)) {
+            // A FILE WRITTEN BEFORE TASK IDS. REWRITES IT ONCE SO JOURNAL RECORDS CAN REFER TO THE NEW IDS
+            writeFile(items, generation);
+            System.out.println("Task ids are added to the " + name + " file");
+        }
+
+        long lastSegment = generation;
+        Replay replay = null;
+        for (long segment : listSegments()) {
+            if (segment > generation) {
+                // THE ID TO POSITION MAP IS ONLY BUILT WHEN THERE IS SOMETHING TO REPLAY
+                if (replay == null) {
+                    replay = new Replay(items);
+                }
+                replay.apply(segmentFile(segment));
+                lastSegment = Math.max(lastSegment, segment);
+            } else {
+                // LEFT OVER FROM A MERGE THAT FINISHED
+                Files.deleteIfExists(segmentFile(segment).toPath());
+            }
+        }
+
+        currentSegment = lastSegment + 1;
+        segmentRecords = 0;
+        return replay == null ? items : replay.result();
+    }
+
+//    REPLACES EVERY TASK ITEM OF THE FILE AND DROPS THE SEGMENTS NOT YET MERGED
+    void replace(List<TaskItem> items) throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                closeWriter();
+                List<Long> segments = listSegments();
+                long generation = Math.max(currentSegment - 1, 0);
+                if (!segments.isEmpty()) {
+                    generation = Math.max(generation, segments.get(segments.size() - 1));
+                }
+
+                // THE NEW GENERATION COVERS EVERY SEGMENT ON DISK, SO NONE IS REPLAYED OVER THE NEW FILE
+                writeFile(items, generation);
+                for (long segment : segments) {
+                    Files.deleteIfExists(segmentFile(segment).toPath());
+                }
+                currentSegment = generation + 1;
+                segmentRecords = 0;
+            }
+        }
+    }
+
+//    APPENDS EVERY OPERATION OF THE BATCH TO THE CURRENT SEGMENT WITH ONE WRITE
+    synchronized void append(TaskBatch batch) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (TaskBatch.Operation operation : batch.getOperations()) {
+            encode(operation, lines);
+        }
+
+        Writer writer = openWriter();
+        File segment = segmentFile(currentSegment);
+        long lengthBefore = segment.length();
+        writer.write(lines.toString());
+        writer.flush();
+        metrics.recordBytesWritten(segment.length() - lengthBefore);
+
+        segmentRecords += batch.size();
+        if (segmentRecords >= COMPACT_THRESHOLD) {
+            compactionExecutor.execute(this::compactQuietly);
+        }
+    }
+
+//    MERGES EVERY CLOSED SEGMENT INTO THE FILE
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            long upTo;
+            synchronized (this) {
+                if (segmentRecords == 0 && !hasSegmentsBefore(currentSegment)) {
+                    return;
+                }
+                // ROTATES SO APPENDS CONTINUE IN A NEW SEGMENT WHILE THE OLD ONES ARE MERGED
+                closeWriter();
+                upTo = segmentRecords == 0 ? currentSegment - 1 : currentSegment;
+                currentSegment = upTo + 1;
+                segmentRecords = 0;
+            }
+
+            // A CHANGE BY ANOTHER PROGRAM IS MERGED TOO, BUT THE LOADED TASK ITEMS HAVEN'T SEEN IT YET
+            boolean changedOnDisk = isChangedOnDisk();
+            List<TaskItem> items = new ArrayList<>();
+            long generation = readFile(items);
+
+            Replay replay = new Replay(items);
+            List<Long> merged = new ArrayList<>();
+            for (long segment : listSegments()) {
+                if (segment <= upTo) {
+                    if (segment > generation) {
+                        replay.apply(segmentFile(segment));
+                    }
+                    merged.add(segment);
+                }
+            }
+
+            writeFile(replay.result(), upTo);
+            if (changedOnDisk) {
+                knownModified = -1;
+            }
+
+            for (long segment : merged) {
+                Files.deleteIfExists(segmentFile(segment).toPath());
+            }
+        }
+    }
+
+//    MERGES WHAT IS LEFT AND RELEASES THE SEGMENT FILE. WAITS FOR A RUNNING BACKGROUND MERGE FIRST
+    void close() {
+        compactQuietly();
+
+        synchronized (this) {
+            try {
+                closeWriter();
+            } catch (IOException e) {
+                System.out.println("Couldn't close the " + name + " journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            System.out.println("Couldn't merge the " + name + " journal: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private long readFile(List<TaskItem> items) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        metrics.recordBytesRead(file.length());
+        return read(file, items::add);
+    }
+
+//    WRITES A TEMP FILE AND MOVES IT OVER THE FILE. THE OLD FILE STAYS INTACT UNTIL THE MOVE
+    private void writeFile(List<TaskItem> items, long generation) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        write(tempFile, items, generation);
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        rememberFile();
+        metrics.recordBytesWritten(file.length());
+    }
+
+    private void rememberFile() {
+        knownModified = file.lastModified();
+        knownLength = file.length();
+    }
+
+//    GIVES EVERY TASK ITEM READ WITHOUT AN ID THE NEXT FREE ID. RETURNS TRUE IF ONE WAS MISSING
+    private static boolean assignMissingIds(List<TaskItem> items) {
+        long maxId = 0;
+        boolean missing = false;
+        for (TaskItem item : items) {
+            maxId = Math.max(maxId, item.getId());
+            missing |= item.getId() == 0;
+        }
+        if (missing) {
+            for (TaskItem item : items) {
+                if (item.getId() == 0) {
+                    item.setId(++maxId);
+                }
+            }
+        }
+        return missing;
+    }
+
+    private Writer openWriter() throws IOException {
+        if (writer == null) {
+            File segment = segmentFile(currentSegment);
+            truncateTornRecord(segment);
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(segment, true), StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(file.getAbsoluteFile().getParentFile(), segmentPrefix + segment);
+    }
+
+//    RETURNS THE SEGMENT NUMBERS ON DISK IN ASCENDING ORDER
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        String[] names = file.getAbsoluteFile().getParentFile().list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(segmentPrefix)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(segmentPrefix.length())));
+                    } catch (NumberFormatException e) {
+                        // NOT A JOURNAL SEGMENT
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+//    RETURNS TRUE IF SEGMENTS NOT YET MERGED INTO THE FILE ARE ON DISK
+    boolean hasSegments() {
+        return !listSegments().isEmpty();
+    }
+
+//    DELETES EVERY SEGMENT ON DISK, FOR EXAMPLE BEFORE ANOTHER FILE TAKES THE PLACE OF THIS ONE
+    void deleteSegments() throws IOException {
+        synchronized (compactionLock) {
+            synchronized (this) {
+                closeWriter();
+                for (long segment : listSegments()) {
+                    Files.deleteIfExists(segmentFile(segment).toPath());
+                }
+                currentSegment = 0;
+                segmentRecords = 0;
+            }
+        }
+    }
+
+    private boolean hasSegmentsBefore(long segment) {
+        List<Long> segments = listSegments();
+        return !segments.isEmpty() && segments.get(0) < segment;
+    }
+
+//    CUTS OFF A LAST LINE LEFT HALF WRITTEN BY A CRASH
+    private static void truncateTornRecord(File segment) throws IOException {
+        if (!segment.exists() || segment.length() == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long length = file.length();
+            long position = length - 1;
+            while (position >= 0) {
+                file.seek(position);
+                if (file.read() == '\n') {
+                    break;
+                }
+                position--;
+            }
+            if (position + 1 < length) {
+                file.setLength(position + 1);
+            }
+        }
+    }
+
+    private void encode(TaskBatch.Operation operation, StringBuilder line) {
+        switch (operation.getType()) {
+            case ADD:
+                line.append(ADD_RECORD);
+                encodeItem(operation.getNewItem(), line);
+                break;
+            case EDIT:
+                line.append(EDIT_RECORD);
+                encodeItem(operation.getNewItem(), line);
+                break;
+            case DELETE:
+                line.append(DELETE_RECORD).append('\t').append(operation.getOldItem().getId());
+                break;
+        }
+        line.append('\n');
+    }
+
+    private void encodeItem(TaskItem item, StringBuilder line) {
+        line.append('\t').append(item.getId()).append('\t');
+        escape(item.decodeShortDescription(), line);
+        line.append('\t');
+        escape(item.getDetails(), line);
+        line.append('\t').append(DeadlineCodec.encode(item.getDeadline()));
+    }
+
+//    ESCAPES THE FIELD SEPARATOR, LINE BREAKS AND THE ESCAPE CHARACTER
+    private static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': out.append('\t'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    default: out.append(next);
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Applies journal records to a loaded list in O(list + records).
+     * Finds the task item of each record through an id to list position map.
+     */
+    private class Replay {
+
+        private final List<TaskItem> items;
+        private final Map<Long, Integer> positions = new HashMap<>();
+
+        Replay(List<TaskItem> items) {
+            this.items = items;
+            for (int i = 0; i < items.size(); i++) {
+                positions.put(items.get(i).getId(), i);
+            }
+        }
+
+        void apply(File segment) throws IOException {
+            byte[] bytes = Files.readAllBytes(segment.toPath());
+            metrics.recordBytesRead(bytes.length);
+            String content = new String(bytes, StandardCharsets.UTF_8);
+
+            int start = 0;
+            int end;
+            // A LAST LINE WITHOUT A LINE BREAK WAS TORN BY A CRASH AND IS IGNORED
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                applyRecord(content.substring(start, end).split("\t", -1));
+                start = end + 1;
+            }
+        }
+
+        private void applyRecord(String[] fields) {
+            long id = Long.parseLong(fields[1]);
+
+            switch (fields[0].charAt(0)) {
+                case ADD_RECORD:
+                    positions.put(id, items.size());
+                    items.add(decodeItem(fields));
+                    break;
+
+                case EDIT_RECORD:
+                    Integer edited = positions.get(id);
+                    if (edited != null) {
+                        items.set(edited, decodeItem(fields));
+                    }
+                    break;
+
+                case DELETE_RECORD:
+                    Integer deleted = positions.remove(id);
+                    if (deleted != null) {
+                        items.set(deleted, null);
+                    }
+                    break;
+            }
+        }
+
+        private TaskItem decodeItem(String[] fields) {
+            return new TaskItem(Long.parseLong(fields[1]), unescape(fields[2]), unescape(fields[3]),
+                    DeadlineCodec.decode(fields[4]));
+        }
+
+//        RETURNS THE REPLAYED LIST WITHOUT THE DELETED POSITIONS
+        List<TaskItem> result() {
+            List<TaskItem> result = new ArrayList<>(items.size());
+            for (TaskItem item : items) {
+                if (item != null) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes task items as JSON objects and reads the flat JSON objects sent to TaskServer.
+ * A task item is {"id":1,"shortDescription":"...","details":"...","deadline":"2019-09-17"}.
+ */
+
+class TaskJson {
+
+    private TaskJson() {
+    }
+
+    static void write(StringBuilder json, TaskItem taskItem) {
+        write(json, taskItem, taskItem.getDetails());
+    }
+
+//    FOR A TASK ITEM WHOSE DETAILS WERE FETCHED ALREADY
+    static void write(StringBuilder json, TaskItem taskItem, String details) {
+        json.append("{\"id\":").append(taskItem.getId());
+        json.append(",\"shortDescription\":");
+        writeString(json, taskItem.decodeShortDescription());
+        json.append(",\"details\":");
+        writeString(json, details);
+        json.append(",\"deadline\":\"").append(taskItem.getDeadline()).append("\"}");
+    }
+
+    static void writeString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+//    READS AN OBJECT OF STRINGS, NUMBERS, BOOLEANS AND NULLS. NUMBERS AND BOOLEANS ARE KEPT AS THEIR TEXT.
+//    THROWS IllegalArgumentException IF THE TEXT ISN'T ONE
+    static Map<String, String> readObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, String> fields = new HashMap<>();
+        parser.expect('{');
+        if (!parser.skip('}')) {
+            do {
+                String name = parser.string();
+                parser.expect(':');
+                fields.put(name, parser.value());
+            } while (parser.skip(','));
+            parser.expect('}');
+        }
+        parser.end();
+        return fields;
+    }
+
+    private static class Parser {
+
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            if (!skip(c)) {
+                throw error("'" + c + "' expected");
+            }
+        }
+
+        boolean skip(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() {
+            skipWhitespace();
+            if (position < text.length()) {
+                throw error("Unexpected text after the object");
+            }
+        }
+
+        String value() {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && "{}[],:\" \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw error("A value expected");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        string.append('\n');
+                        break;
+                    case 'r':
+                        string.append('\r');
+                        break;
+                    case 't':
+                        string.append('\t');
+                        break;
+                    case 'b':
+                        string.append('\b');
+                        break;
+                    case 'f':
+                        string.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Incomplete \\u escape");
+                        }
+                        try {
+                            string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Bad \\u escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        string.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at character " + position);
+        }
+    }
+}
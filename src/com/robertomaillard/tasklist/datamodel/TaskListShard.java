@@ -0,0 +1,65 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * The files of one named task list and, while it isn't the list on screen, the task items last loaded from them.
+ * The default list keeps the TaskListItems.xml, .snapshot and .db names. Every other list gets
+ * TaskListItems.<name>.xml and so on beside them, so a load or a write only pays for its own list.
+ */
+
+class TaskListShard {
+
+    static final String BASE_NAME = "TaskListItems";
+
+    final String name;
+    final TaskDatabase database;
+    final TaskXMLJournal xmlJournal;
+    final TaskSnapshotJournal snapshotJournal;
+
+//    SET WHILE THE LIST IS IDLE. RESTORED INSTEAD OF READ AGAIN IF NOTHING CHANGED THE FILES MEANWHILE
+    List<TaskItem> items;
+    TaskData.DataSource loadedFrom;
+    long lastId;
+    long dataVersion;
+    long lastChangeSeq;
+
+//    WHEN THE LIST STOPPED BEING THE ONE ON SCREEN
+    long idleSince;
+
+    TaskListShard(File directory, String name, boolean isDefault) {
+        this.name = name;
+        String baseName = isDefault ? BASE_NAME : BASE_NAME + "." + name;
+        this.database = new TaskDatabase("jdbc:sqlite:" + new File(directory, baseName + ".db").getPath());
+        this.xmlJournal = new TaskXMLJournal(new File(directory, baseName + ".xml"));
+        this.snapshotJournal = new TaskSnapshotJournal(new File(directory, baseName + ".snapshot"));
+    }
+
+//    RETURNS THE LIST NAME OF A DATA SOURCE FILE, OR NULL IF IT ISN'T ONE. THE DEFAULT LIST IS NAMED defaultName
+    static String nameOf(String fileName, String extension, String defaultName) {
+        if (fileName.equals(BASE_NAME + extension)) {
+            return defaultName;
+        }
+        String prefix = BASE_NAME + ".";
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(extension)) {
+            return null;
+        }
+        String name = fileName.substring(prefix.length(), fileName.length() - extension.length());
+        return isValidName(name) ? name : null;
+    }
+
+//    LETTERS, DIGITS, SPACES, - AND _. A DOT WOULD MAKE FILE NAMES AMBIGUOUS
+    static boolean isValidName(String name) {
+        return !name.isBlank() && name.length() <= 64 && name.equals(name.trim())
+                && name.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == ' ' || c == '-' || c == '_');
+    }
+
+//    DROPS THE IDLE TASK ITEMS, CLOSES THE DATABASE AND MERGES THE JOURNALS
+    void close() {
+        items = null;
+        database.close();
+        xmlJournal.close();
+        snapshotJournal.close();
+    }
+}
@@ -0,0 +1,245 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Latency histograms and counters of TaskData, per data source and operation.
+ * LOAD is a whole loadTaskItems(). ADD, EDIT and DELETE are the time the caller waits, one sample per task item.
+ * SAVE is the writer thread saving one batch. Registered as a platform MXBean, so jconsole or any JMX client
+ * can read the p99 save latency of a running application. It can also log itself at an interval.
+ */
+
+public class TaskMetrics implements TaskMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.robertomaillard.tasklist:type=TaskMetrics";
+
+    public enum Operation {
+        LOAD,
+        ADD,
+        EDIT,
+        DELETE,
+        SAVE
+    }
+
+    /**
+     * Metrics of one data source. Handed to its journal, which counts the bytes it reads and writes.
+     */
+    static class Source {
+
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+        private final LongAdder itemsLoaded = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+
+        Source() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                failures.put(operation, new LongAdder());
+            }
+        }
+
+        void record(Operation operation, long nanos) {
+            latencies.get(operation).record(nanos);
+        }
+
+//        RECORDS ONE SAMPLE PER TASK ITEM. THE NANOSECONDS ARE SHARED BETWEEN THEM
+        void record(Operation operation, long nanos, long items) {
+            latencies.get(operation).record(nanos, items);
+        }
+
+        void recordFailure(Operation operation) {
+            failures.get(operation).increment();
+        }
+
+        void recordItemsLoaded(long items) {
+            itemsLoaded.add(items);
+        }
+
+        void recordBytesRead(long bytes) {
+            bytesRead.add(bytes);
+        }
+
+        void recordBytesWritten(long bytes) {
+            bytesWritten.add(bytes);
+        }
+
+        private void reset() {
+            for (Operation operation : Operation.values()) {
+                latencies.get(operation).reset();
+                failures.get(operation).reset();
+            }
+            itemsLoaded.reset();
+            bytesRead.reset();
+            bytesWritten.reset();
+        }
+    }
+
+    private final Map<TaskData.DataSource, Source> sources = new EnumMap<>(TaskData.DataSource.class);
+
+    private ScheduledExecutorService logExecutor;
+    private ScheduledFuture<?> logTask;
+    private long logIntervalSeconds;
+
+    TaskMetrics() {
+        for (TaskData.DataSource dataSource : TaskData.DataSource.values()) {
+            sources.put(dataSource, new Source());
+        }
+    }
+
+    Source source(TaskData.DataSource dataSource) {
+        return sources.get(dataSource);
+    }
+
+//    REGISTERS THE METRICS WITH THE PLATFORM MBeanServer UNDER OBJECT_NAME
+    public void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            System.out.println("Couldn't register the task metrics MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getOperations() {
+        return perOperation(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<TaskData.DataSource, Source> source : sources.entrySet()) {
+            for (Operation operation : Operation.values()) {
+                values.put(source.getKey() + "." + operation, source.getValue().failures.get(operation).sum());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMillis() {
+        return perOperation(histogram -> millis(histogram.getMeanNanos()));
+    }
+
+    @Override
+    public Map<String, Double> getP50LatencyMillis() {
+        return perOperation(histogram -> millis(histogram.getPercentileNanos(50)));
+    }
+
+    @Override
+    public Map<String, Double> getP99LatencyMillis() {
+        return perOperation(histogram -> millis(histogram.getPercentileNanos(99)));
+    }
+
+    @Override
+    public Map<String, Double> getMaxLatencyMillis() {
+        return perOperation(histogram -> millis(histogram.getMaxNanos()));
+    }
+
+    @Override
+    public Map<String, Long> getItemsLoaded() {
+        Map<String, Long> values = new TreeMap<>();
+        sources.forEach((dataSource, source) -> values.put(dataSource.name(), source.itemsLoaded.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getBytesRead() {
+        Map<String, Long> values = new TreeMap<>();
+        sources.forEach((dataSource, source) -> values.put(dataSource.name(), source.bytesRead.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getBytesWritten() {
+        Map<String, Long> values = new TreeMap<>();
+        sources.forEach((dataSource, source) -> values.put(dataSource.name(), source.bytesWritten.sum()));
+        return values;
+    }
+
+    @Override
+    public synchronized long getLogIntervalSeconds() {
+        return logIntervalSeconds;
+    }
+
+//    PRINTS dump() EVERY INTERVAL ON A DAEMON THREAD. 0 STOPS IT
+    @Override
+    public synchronized void setLogIntervalSeconds(long seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The log interval can't be negative: " + seconds);
+        }
+        if (logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+        logIntervalSeconds = seconds;
+        if (seconds == 0) {
+            return;
+        }
+        if (logExecutor == null) {
+            logExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "TaskList metrics log");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        logTask = logExecutor.scheduleAtFixedRate(() -> System.out.println(dump()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+//    ONE LINE PER DATA SOURCE AND OPERATION THAT RAN, THEN THE ITEM AND BYTE COUNTERS OF EACH DATA SOURCE
+    @Override
+    public String dump() {
+        StringBuilder dump = new StringBuilder("Task metrics");
+        for (Map.Entry<TaskData.DataSource, Source> entry : sources.entrySet()) {
+            Source source = entry.getValue();
+            for (Operation operation : Operation.values()) {
+                LatencyHistogram histogram = source.latencies.get(operation);
+                long failures = source.failures.get(operation).sum();
+                if (histogram.getCount() == 0 && failures == 0) {
+                    continue;
+                }
+                dump.append(String.format("%n  %s.%s n=%d failed=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                        entry.getKey(), operation, histogram.getCount(), failures,
+                        millis(histogram.getMeanNanos()), millis(histogram.getPercentileNanos(50)),
+                        millis(histogram.getPercentileNanos(99)), millis(histogram.getMaxNanos())));
+            }
+            if (source.itemsLoaded.sum() > 0 || source.bytesRead.sum() > 0 || source.bytesWritten.sum() > 0) {
+                dump.append(String.format("%n  %s loaded=%d items read=%d bytes written=%d bytes",
+                        entry.getKey(), source.itemsLoaded.sum(), source.bytesRead.sum(), source.bytesWritten.sum()));
+            }
+        }
+        return dump.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Source source : sources.values()) {
+            source.reset();
+        }
+    }
+
+    private <T> Map<String, T> perOperation(Function<LatencyHistogram, T> value) {
+        Map<String, T> values = new TreeMap<>();
+        for (Map.Entry<TaskData.DataSource, Source> source : sources.entrySet()) {
+            for (Operation operation : Operation.values()) {
+                values.put(source.getKey() + "." + operation, value.apply(source.getValue().latencies.get(operation)));
+            }
+        }
+        return values;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,38 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.Map;
+
+/**
+ * Management interface of TaskMetrics, registered with the platform MBeanServer.
+ * Keys are the data source and the operation, for example "DB.SAVE". Latencies are in milliseconds.
+ */
+
+public interface TaskMetricsMXBean {
+
+    Map<String, Long> getOperations();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Double> getMeanLatencyMillis();
+
+    Map<String, Double> getP50LatencyMillis();
+
+    Map<String, Double> getP99LatencyMillis();
+
+    Map<String, Double> getMaxLatencyMillis();
+
+//    KEYED BY DATA SOURCE ONLY
+    Map<String, Long> getItemsLoaded();
+
+    Map<String, Long> getBytesRead();
+
+    Map<String, Long> getBytesWritten();
+
+    long getLogIntervalSeconds();
+
+    void setLogIntervalSeconds(long seconds);
+
+    String dump();
+
+    void reset();
+}
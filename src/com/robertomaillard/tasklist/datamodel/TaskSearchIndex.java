@@ -0,0 +1,238 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * In-memory inverted index of the words in task item short descriptions and details.
+ * Listens to the TaskData ObservableList like TaskDeadlineIndex, so every add, edit and delete keeps it current.
+ * Every search word must match, and the last one also matches as a prefix so results follow the typing.
+ */
+
+class TaskSearchIndex implements ListChangeListener<TaskItem> {
+
+//    A SHORTER LAST WORD ONLY MATCHES WHOLE WORDS. A ONE LETTER PREFIX MATCHES MOST TASK ITEMS AND FINDS NOTHING USEFUL
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+//    TASK ITEMS OF EACH WORD. SORTED SO A PREFIX IS A RANGE OF KEYS
+    private final TreeMap<String, Set<TaskItem>> itemsByWord = new TreeMap<>();
+
+//    WORDS EACH TASK ITEM WAS INDEXED UNDER. NEEDED TO REMOVE IT AGAIN
+    private final Map<TaskItem, String[]> indexedWords = new IdentityHashMap<>();
+
+//    REBUILDS THE INDEX FROM THE LIST
+    void reset(List<? extends TaskItem> items) {
+        itemsByWord.clear();
+        indexedWords.clear();
+        for (TaskItem item : items) {
+            add(item);
+        }
+    }
+
+    @Override
+    public void onChanged(Change<? extends TaskItem> change) {
+        ObservableList<? extends TaskItem> list = change.getList();
+
+        // A RELOAD OR A LARGE BATCH REPLACES THE WHOLE LIST. REBUILDING IS CHEAPER THAN REMOVING EVERY ITEM ONE BY ONE
+        if (TaskItemList.isReplacement(change, indexedWords.size())) {
+            reset(list);
+            return;
+        }
+
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            if (change.wasUpdated()) {
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    TaskItem item = list.get(i);
+                    remove(item);
+                    add(item);
+                }
+                continue;
+            }
+            for (TaskItem removed : change.getRemoved()) {
+                remove(removed);
+            }
+            for (TaskItem added : change.getAddedSubList()) {
+                add(added);
+            }
+        }
+    }
+
+//    RETURNS THE IDS OF THE TASK ITEMS MATCHING EVERY WORD OF THE QUERY
+    TaskIdSet search(String query) {
+        List<String> words = words(query);
+        TaskIdSet result = new TaskIdSet();
+        if (words.isEmpty()) {
+            return result;
+        }
+        String prefix = words.get(words.size() - 1);
+        List<String> wholeWords = words.subList(0, words.size() - 1);
+        if (prefix.length() < MIN_PREFIX_LENGTH) {
+            wholeWords = words;
+            prefix = "";
+        }
+
+        if (wholeWords.isEmpty()) {
+            // ONLY A PREFIX QUERY GETS HERE. A WHOLE WORD QUERY ALWAYS HAS AT LEAST ONE WHOLE WORD
+            for (Set<TaskItem> items : prefixRange(prefix).values()) {
+                for (TaskItem item : items) {
+                    result.add(item.getId());
+                }
+            }
+            return result;
+        }
+
+        // STARTS FROM THE RAREST WHOLE WORD AND CHECKS THE OTHER WORDS AGAINST EACH CANDIDATE ONLY
+        List<Set<TaskItem>> wordItems = new ArrayList<>();
+        for (String word : wholeWords) {
+            Set<TaskItem> items = itemsByWord.get(word);
+            if (items == null) {
+                return result;
+            }
+            wordItems.add(items);
+        }
+        wordItems.sort(Comparator.comparingInt(Set::size));
+
+        for (TaskItem candidate : wordItems.get(0)) {
+            if (containsAll(wordItems, candidate) && hasWordStartingWith(candidate, prefix)) {
+                result.add(candidate.getId());
+            }
+        }
+        return result;
+    }
+
+//    RETURNS TRUE IF THE TASK ITEM MATCHES THE QUERY THE WAY search() MATCHES THE INDEXED ONES.
+//    FOR A TASK ITEM THE INDEX DOESN'T HOLD YET
+    static boolean matches(String query, TaskItem item) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return false;
+        }
+        String prefix = words.get(words.size() - 1);
+        List<String> wholeWords = words.subList(0, words.size() - 1);
+        if (prefix.length() < MIN_PREFIX_LENGTH) {
+            wholeWords = words;
+            prefix = "";
+        }
+
+        Set<String> itemWords = new HashSet<>(words(item.decodeShortDescription()));
+        itemWords.addAll(words(item.getDetails()));
+        if (!itemWords.containsAll(wholeWords)) {
+            return false;
+        }
+        for (String word : itemWords) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+//    SPLITS TEXT INTO LOWER CASE RUNS OF LETTERS AND DIGITS WITHOUT THEIR DIACRITICS, SO AN ACCENTED e IS AN e.
+//    SQLITE'S unicode61 TOKENIZER REMOVES DIACRITICS TOO, SO BOTH INDEXES FIND THE SAME TASK ITEMS
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        text = withoutDiacritics(text);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+//    SPLITS ACCENTED LETTERS INTO THE LETTER AND ITS COMBINING MARKS AND DROPS THE MARKS. ASCII TEXT IS RETURNED AS IT IS
+    private static String withoutDiacritics(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+                StringBuilder stripped = new StringBuilder(decomposed.length());
+                for (int j = 0; j < decomposed.length(); j++) {
+                    char c = decomposed.charAt(j);
+                    if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                        stripped.append(c);
+                    }
+                }
+                return stripped.toString();
+            }
+        }
+        return text;
+    }
+
+//    BUILDS THE FTS5 MATCH EXPRESSION FOR THE QUERY, OR NULL IF IT HAS NO WORDS. THE LAST WORD IS A PREFIX
+    static String matchExpression(String query) {
+        List<String> words = words(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+        StringBuilder expression = new StringBuilder();
+        for (String word : words) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append('"').append(word).append('"');
+        }
+        if (words.get(words.size() - 1).length() >= MIN_PREFIX_LENGTH) {
+            expression.append('*');
+        }
+        return expression.toString();
+    }
+
+    private void add(TaskItem item) {
+        Set<String> words = new LinkedHashSet<>(words(item.decodeShortDescription()));
+        words.addAll(words(item.getDetails()));
+        for (String word : words) {
+            itemsByWord.computeIfAbsent(word, key -> Collections.newSetFromMap(new IdentityHashMap<>())).add(item);
+        }
+        indexedWords.put(item, words.toArray(new String[0]));
+    }
+
+    private void remove(TaskItem item) {
+        String[] words = indexedWords.remove(item);
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Set<TaskItem> items = itemsByWord.get(word);
+            items.remove(item);
+            if (items.isEmpty()) {
+                itemsByWord.remove(word);
+            }
+        }
+    }
+
+    private SortedMap<String, Set<TaskItem>> prefixRange(String prefix) {
+        return itemsByWord.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private static boolean containsAll(List<Set<TaskItem>> wordItems, TaskItem item) {
+        for (int i = 1; i < wordItems.size(); i++) {
+            if (!wordItems.get(i).contains(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasWordStartingWith(TaskItem item, String prefix) {
+        for (String word : indexedWords.get(item)) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
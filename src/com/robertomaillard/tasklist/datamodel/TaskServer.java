@@ -0,0 +1,497 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import javafx.beans.InvalidationListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Local HTTP API of the task list on screen, for scripts and dashboards. Listens on localhost only.
+ *   GET    /tasks          every task item by id. ?q= keeps the ones matching every word of it, like the search box,
+ *                          ?from= and ?to= a range of deadlines, ?after= the ids above one, ?offset= and ?limit= a page
+ *   GET    /tasks/{id}     one task item
+ *   POST   /tasks          adds {"shortDescription":...,"details":...,"deadline":"2019-09-17"}
+ *   PUT    /tasks/{id}     edits the fields given
+ *   DELETE /tasks/{id}     deletes
+ * POST and PUT take Content-Type: application/json only. Requests must name localhost as their Host and carry
+ * no Origin of another site, so web pages can't reach the API through the browser.
+ * Reads are answered from a copy of the list taken after each change, so they never wait for the JavaFX thread.
+ * Only a search of the in-memory search index, which lives on it, does. The database is searched on the request thread. Changes are made on the executor given, which must
+ * run them on the JavaFX application thread.
+ * With paged loading the list holds no task items, so neither does the API.
+ */
+
+public class TaskServer {
+
+    private static final String TASKS_PATH = "/tasks";
+
+//    THE JDK SERVER WRITES THE HEADERS AND THE BODY SEPARATELY. WITH NAGLE'S ALGORITHM THE BODY WAITS FOR THE
+//    DELAYED ACK OF THE HEADERS, ABOUT 40ms PER REQUEST ON localhost. READ ONCE, WHEN THE FIRST SERVER IS CREATED
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+//    HOW LONG A CHANGE WAITS FOR THE JavaFX THREAD BEFORE THE REQUEST FAILS
+    private static final long CHANGE_TIMEOUT_SECONDS = 10;
+
+//    COPIES OF THE TASK ITEMS AT ONE POINT IN TIME, BY ID. NEVER CHANGED ONCE PUBLISHED. THE JSON OF THE WHOLE
+//    LIST IS WRITTEN BY THE FIRST REQUEST FOR IT
+    private static class Snapshot {
+        final TaskItem[] byId;
+//        THE TASK ITEMS ON THE LIST THE COPIES WERE TAKEN FROM, IN THE SAME ORDER. ONLY USED ON THE JavaFX THREAD
+        final TaskItem[] listItems;
+        volatile byte[] json;
+
+        Snapshot(TaskItem[] byId, TaskItem[] listItems) {
+            this.byId = byId;
+            this.listItems = listItems;
+        }
+    }
+
+    private final TaskData taskData;
+    private final Executor applyExecutor;
+
+    private volatile Snapshot snapshot = new Snapshot(new TaskItem[0], new TaskItem[0]);
+
+//    SET WHEN THE LIST CHANGED AND A NEW SNAPSHOT IS QUEUED ON THE EXECUTOR. ONLY USED ON THE JavaFX THREAD
+    private boolean stale;
+    private final InvalidationListener listener = observable -> {
+        if (!stale) {
+            stale = true;
+            execute(this::publish);
+        }
+    };
+
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+
+    public TaskServer(TaskData taskData, Executor applyExecutor) {
+        this.taskData = taskData;
+        this.applyExecutor = applyExecutor;
+    }
+
+//    STARTS SERVING ON THE PORT OF localhost. CALLED ON THE JavaFX THREAD, OR BEFORE IT TOUCHES THE LIST
+    public void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The task server is already started");
+        }
+        stale = true;
+        publish();
+        taskData.getTaskItems().addListener(listener);
+
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requestExecutor = newRequestExecutor();
+        server.setExecutor(requestExecutor);
+        server.createContext(TASKS_PATH, this::handle);
+        server.start();
+        System.out.println("Task list API listening on http://localhost:" + getPort() + TASKS_PATH);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        taskData.getTaskItems().removeListener(listener);
+        server.stop(0);
+        requestExecutor.shutdown();
+        server = null;
+    }
+
+//    ONE VIRTUAL THREAD PER REQUEST ON JAVA 21 AND LATER, WHICH ISN'T THE BUILD LEVEL, SO IT IS LOOKED UP.
+//    EARLIER JAVA REUSES POOLED THREADS
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "TaskList API");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+//    COPIES THE LIST AND ITS TASK ITEMS, WHOSE IDS THE WRITER MAY STILL CHANGE. RUNS ON THE JavaFX THREAD,
+//    ONCE FOR ANY NUMBER OF CHANGES QUEUED BEFORE IT
+    private void publish() {
+        if (!stale) {
+            return;
+        }
+        stale = false;
+        TaskItem[] listItems = taskData.getTaskItems().toArray(new TaskItem[0]);
+        Arrays.sort(listItems, Comparator.comparingLong(TaskItem::getId));
+        TaskItem[] byId = new TaskItem[listItems.length];
+        for (int i = 0; i < listItems.length; i++) {
+            byId[i] = listItems[i].copy();
+        }
+        snapshot = new Snapshot(byId, listItems);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String refusal = refusal(exchange);
+            if (refusal != null) {
+                send(exchange, 403, error(refusal));
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if ((method.equals("POST") || method.equals("PUT")) && !isJson(exchange)) {
+                send(exchange, 415, error("Content-Type: application/json expected"));
+                return;
+            }
+            Long id = null;
+            if (path.length() > TASKS_PATH.length() + 1) {
+                try {
+                    id = Long.parseLong(path.substring(TASKS_PATH.length() + 1));
+                } catch (NumberFormatException e) {
+                    send(exchange, 404, error("No such path"));
+                    return;
+                }
+            } else if (!path.equals(TASKS_PATH) && !path.equals(TASKS_PATH + "/")) {
+                send(exchange, 404, error("No such path"));
+                return;
+            }
+
+            switch (method) {
+                case "GET":
+                    if (id == null) {
+                        list(exchange);
+                    } else {
+                        get(exchange, id);
+                    }
+                    break;
+                case "POST":
+                    if (id == null) {
+                        add(exchange);
+                    } else {
+                        send(exchange, 405, error("POST to " + TASKS_PATH));
+                    }
+                    break;
+                case "PUT":
+                    if (id != null) {
+                        edit(exchange, id);
+                    } else {
+                        send(exchange, 405, error("PUT to " + TASKS_PATH + "/{id}"));
+                    }
+                    break;
+                case "DELETE":
+                    if (id != null) {
+                        delete(exchange, id);
+                    } else {
+                        send(exchange, 405, error("DELETE " + TASKS_PATH + "/{id}"));
+                    }
+                    break;
+                default:
+                    send(exchange, 405, error("Unsupported method " + method));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (Exception e) {
+            System.out.println("Couldn't answer " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    + ": " + e.getMessage());
+            send(exchange, 500, error(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+//    RETURNS WHY A REQUEST A BROWSER MAY HAVE SENT FOR ANOTHER SITE IS REFUSED, OR NULL. A PAGE THAT REBINDS
+//    ITS HOST NAME TO 127.0.0.1 STILL SENDS THAT NAME AS THE Host, AND A CROSS-SITE REQUEST CARRIES ITS Origin
+    private String refusal(HttpExchange exchange) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !isLocalHost(host)) {
+            return "Host " + host + " isn't this server";
+        }
+        String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null && !(origin.regionMatches(true, 0, "http://", 0, 7) && isLocalHost(origin.substring(7)))) {
+            return "Requests from " + origin + " aren't served";
+        }
+        return null;
+    }
+
+    private boolean isLocalHost(String host) {
+        String port = ":" + getPort();
+        return host.equalsIgnoreCase("localhost" + port) || host.equals("127.0.0.1" + port) || host.equals("[::1]" + port);
+    }
+
+//    A BROWSER SENDS application/json TO ANOTHER SITE ONLY AFTER A PREFLIGHT, WHICH IS NEVER ALLOWED HERE
+    private static boolean isJson(HttpExchange exchange) {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type == null) {
+            return false;
+        }
+        int parameters = type.indexOf(';');
+        return (parameters < 0 ? type : type.substring(0, parameters)).trim().equalsIgnoreCase("application/json");
+    }
+
+    private void list(HttpExchange exchange) throws Exception {
+        Snapshot snapshot = this.snapshot;
+        String query = exchange.getRequestURI().getRawQuery();
+
+        // THE WHOLE LIST IS WRITTEN ONCE PER SNAPSHOT
+        if (query == null || query.isEmpty()) {
+            byte[] json = snapshot.json;
+            if (json == null) {
+                json = toJson(snapshot.byId, 0, 0, Integer.MAX_VALUE, null, Long.MIN_VALUE, Long.MAX_VALUE);
+                snapshot.json = json;
+            }
+            send(exchange, 200, json);
+            return;
+        }
+
+        Map<String, String> parameters = parameters(query);
+        String text = parameters.get("q");
+        long fromDay = parameters.containsKey("from") ? LocalDate.parse(parameters.get("from")).toEpochDay() : Long.MIN_VALUE;
+        long toDay = parameters.containsKey("to") ? LocalDate.parse(parameters.get("to")).toEpochDay() : Long.MAX_VALUE;
+        int offset = parameters.containsKey("offset") ? Integer.parseInt(parameters.get("offset")) : 0;
+        int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : Integer.MAX_VALUE;
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit can't be negative");
+        }
+
+        // THE IDS ABOVE after START WHERE A BINARY SEARCH PUTS THEM
+        int start = parameters.containsKey("after") ? indexAbove(snapshot.byId, Long.parseLong(parameters.get("after"))) : 0;
+
+        // THE DATABASE IS SEARCHED HERE, SO THE JavaFX THREAD NEVER WAITS FOR IT. THE IN-MEMORY SEARCH INDEX IS ONLY
+        // USED ON THE JavaFX THREAD. EITHER WAY THE IDS ARE TESTED AGAINST THE SNAPSHOT
+        Predicate<TaskItem> matches = null;
+        if (text != null && !TaskSearchIndex.words(text).isEmpty()) {
+            matches = taskData.isSearchInDatabase()
+                    ? taskData.getSearchPredicate(text)
+                    : change(() -> taskData.getSearchPredicate(text));
+        }
+        send(exchange, 200, toJson(snapshot.byId, start, offset, limit, matches, fromDay, toDay));
+    }
+
+//    WRITES THE PAGE OF THE TASK ITEMS FROM start ON THAT PASS THE FILTERS. WITHOUT FILTERS THE PAGE IS
+//    A SLICE OF THE ARRAY, SO ONLY THE TASK ITEMS WRITTEN ARE VISITED. DETAILS LEFT IN THE DATABASE ARE
+//    FETCHED FOR THE WHOLE PAGE AT ONCE, NOT ONE QUERY PER TASK ITEM
+    private byte[] toJson(TaskItem[] items, int start, int offset, int limit, Predicate<TaskItem> matches,
+                                 long fromDay, long toDay) {
+        boolean filtered = matches != null || fromDay != Long.MIN_VALUE || toDay != Long.MAX_VALUE;
+        int first = filtered ? start : (int) Math.min(items.length, (long) start + offset);
+        int end = filtered ? items.length : (int) Math.min(items.length, (long) first + limit);
+        int skip = filtered ? offset : 0;
+
+        List<TaskItem> page = new ArrayList<>(Math.min(end - first, limit));
+        for (int i = first; i < end && page.size() < limit; i++) {
+            TaskItem item = items[i];
+            if (item.getDeadlineEpochDay() < fromDay || item.getDeadlineEpochDay() > toDay) {
+                continue;
+            }
+            if (matches != null && !matches.test(item)) {
+                continue;
+            }
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            page.add(item);
+        }
+
+        Map<Long, String> details = taskData.loadDetails(page);
+        StringBuilder json = new StringBuilder(page.size() * 64 + 2).append('[');
+        for (TaskItem item : page) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            String text = details.get(item.getId());
+            TaskJson.write(json, item, text != null ? text : item.getDetails());
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void get(HttpExchange exchange, long id) throws IOException {
+        TaskItem item = find(snapshot.byId, id);
+        if (item == null) {
+            send(exchange, 404, error("No task item " + id));
+            return;
+        }
+        send(exchange, 200, toJson(item));
+    }
+
+    private void add(HttpExchange exchange) throws Exception {
+        Map<String, String> fields = TaskJson.readObject(body(exchange));
+        String shortDescription = fields.get("shortDescription");
+        if (shortDescription == null || shortDescription.isBlank()) {
+            throw new IllegalArgumentException("A shortDescription is needed");
+        }
+        String details = fields.getOrDefault("details", "");
+        String deadline = fields.get("deadline");
+        TaskItem item = new TaskItem(shortDescription, details == null ? "" : details,
+                deadline == null ? LocalDate.now() : LocalDate.parse(deadline));
+
+        change(() -> {
+            taskData.addTaskItem(item);
+            return item;
+        });
+        send(exchange, 201, toJson(item));
+    }
+
+    private void edit(HttpExchange exchange, long id) throws Exception {
+        Map<String, String> fields = TaskJson.readObject(body(exchange));
+        LocalDate deadline = fields.get("deadline") == null ? null : LocalDate.parse(fields.get("deadline"));
+
+        TaskItem edited = change(() -> {
+            TaskItem oldItem = findOnList(id);
+            if (oldItem == null) {
+                return null;
+            }
+            TaskItem newItem = new TaskItem(
+                    fields.get("shortDescription") != null ? fields.get("shortDescription") : oldItem.getShortDescription(),
+                    fields.get("details") != null ? fields.get("details") : oldItem.getDetails(),
+                    deadline != null ? deadline : oldItem.getDeadline());
+            taskData.editTaskItem(oldItem, newItem);
+            return newItem;
+        });
+        if (edited == null) {
+            send(exchange, 404, error("No task item " + id));
+            return;
+        }
+        send(exchange, 200, toJson(edited));
+    }
+
+    private void delete(HttpExchange exchange, long id) throws Exception {
+        TaskItem deleted = change(() -> {
+            TaskItem item = findOnList(id);
+            if (item != null) {
+                taskData.deleteTaskItem(item);
+            }
+            return item;
+        });
+        if (deleted == null) {
+            send(exchange, 404, error("No task item " + id));
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+//    THE TASK ITEM ON THE LIST NOW. THE SNAPSHOT FINDS IT UNLESS THE LIST CHANGED SINCE. RUNS ON THE JavaFX THREAD
+    private TaskItem findOnList(long id) {
+        if (!stale) {
+            Snapshot snapshot = this.snapshot;
+            int index = indexAbove(snapshot.byId, id - 1);
+            return index < snapshot.byId.length && snapshot.byId[index].getId() == id ? snapshot.listItems[index] : null;
+        }
+        for (TaskItem taskItem : taskData.getTaskItems()) {
+            if (taskItem.getId() == id) {
+                return taskItem;
+            }
+        }
+        return null;
+    }
+
+    private static TaskItem find(TaskItem[] byId, long id) {
+        int index = indexAbove(byId, id - 1);
+        return index < byId.length && byId[index].getId() == id ? byId[index] : null;
+    }
+
+//    RETURNS THE INDEX OF THE FIRST TASK ITEM WITH AN ID ABOVE THE ONE GIVEN, OR THE LENGTH IF THERE IS NONE
+    private static int indexAbove(TaskItem[] byId, long id) {
+        int low = 0;
+        int high = byId.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (byId[middle].getId() <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+//    MAKES A CHANGE, OR ASKS SOMETHING ONLY THE JavaFX THREAD KNOWS, ON THE JavaFX THREAD AND WAITS FOR IT.
+//    THE SNAPSHOT IS TAKEN BEFORE THE ANSWER, SO A READ AFTER IT SEES THE CHANGE
+    private <T> T change(Supplier<T> change) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                T value = change.get();
+                publish();
+                result.complete(value);
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.get(CHANGE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            throw new IOException("The task list didn't take the change in " + CHANGE_TIMEOUT_SECONDS + "s");
+        }
+    }
+
+    private void execute(Runnable runnable) {
+        applyExecutor.execute(runnable);
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static byte[] toJson(TaskItem item) {
+        StringBuilder json = new StringBuilder();
+        TaskJson.write(json, item);
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        TaskJson.writeString(json, message == null ? "" : message);
+        return json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Journal for the binary task items snapshot file (TaskListItems.snapshot.journal.N).
+ * The snapshot header records the last merged segment.
+ */
+
+class TaskSnapshotJournal extends TaskJournal {
+
+    TaskSnapshotJournal(File snapshotFile) {
+        super(snapshotFile, "snapshot");
+    }
+
+    @Override
+    long read(File file, Consumer<TaskItem> consumer) throws IOException {
+        return new TaskSnapshotReader(getReadThreads()).read(file, consumer);
+    }
+
+    @Override
+    void write(File file, List<TaskItem> items, long generation) throws IOException {
+        try (TaskSnapshotWriter snapshotWriter = new TaskSnapshotWriter(new FileOutputStream(file), generation)) {
+            for (TaskItem item : items) {
+                snapshotWriter.write(item);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reader for the binary task items snapshot file.
+ * The file is memory-mapped and every TaskItem is decoded straight from the mapped buffer,
+ * so loading costs little more than reading the file.
+ *
+ * Format, big-endian: magic, version, generation, then one record per task item and an end marker.
+ * A record is its length followed by id, epoch day deadline and the length-prefixed UTF-8 short description
+ * and details. Bytes past the fields a version knows are skipped, so later versions can append fields.
+ * With more than one thread the record lengths are walked to split the file into ranges,
+ * and the ranges are decoded in parallel from views of the same mapping.
+ */
+
+class TaskSnapshotReader {
+
+    static final int MAGIC = 0x544C534E;
+    static final int VERSION = 1;
+    static final int END_OF_RECORDS = -1;
+
+//    LARGEST REGION MAPPED AT ONCE. A LARGER FILE IS MAPPED IN WINDOWS
+    private static final long MAX_MAPPING = Integer.MAX_VALUE;
+
+    private final int threads;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long bufferStart;
+
+    TaskSnapshotReader() {
+        this(1);
+    }
+
+    TaskSnapshotReader(int threads) {
+        this.threads = threads;
+    }
+
+//    PASSES EVERY TASK ITEM TO THE CONSUMER IN FILE ORDER. RETURNS THE GENERATION, THE LAST JOURNAL SEGMENT MERGED
+    long read(File snapshotFile, Consumer<TaskItem> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            this.channel = channel;
+            map(0);
+
+            ensure(16);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(snapshotFile + " is not a task list snapshot");
+            }
+            int version = buffer.getInt();
+            if (version > VERSION) {
+                throw new IOException("Snapshot version " + version + " is newer than this program");
+            }
+            long generation = buffer.getLong();
+
+            if (threads > 1 && channel.size() <= MAX_MAPPING) {
+                readParallel(consumer);
+                return generation;
+            }
+
+            while (true) {
+                ensure(4);
+                int length = buffer.getInt();
+                if (length == END_OF_RECORDS) {
+                    return generation;
+                }
+                ensure(length);
+                consumer.accept(readRecord(buffer, length));
+            }
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+//    THE WHOLE FILE IS ONE MAPPING HERE. EACH RANGE IS DECODED FROM ITS OWN VIEW OF IT
+    private void readParallel(Consumer<TaskItem> consumer) throws IOException {
+        List<Integer> starts = new ArrayList<>();
+        int firstRecord = buffer.position();
+        int rangeSize = Math.max(1, (buffer.limit() - firstRecord) / (threads * ParallelTaskDecoder.CHUNKS_PER_THREAD));
+
+        // ONLY THE LENGTHS ARE READ HERE. NOTHING IS DECODED
+        int nextStart = firstRecord;
+        int position = firstRecord;
+        int end;
+        while (true) {
+            if (position + 4 > buffer.limit()) {
+                throw new IOException("Snapshot is truncated");
+            }
+            int length = buffer.getInt(position);
+            if (length == END_OF_RECORDS) {
+                end = position;
+                break;
+            }
+            if (length < 0 || buffer.limit() - position - 4 < length) {
+                throw new IOException("Snapshot is truncated");
+            }
+            if (position >= nextStart) {
+                starts.add(position);
+                nextStart = position + rangeSize;
+            }
+            position += 4 + length;
+        }
+        starts.add(end);
+
+        List<Integer> ranges = new ArrayList<>();
+        for (int i = 0; i < starts.size() - 1; i++) {
+            ranges.add(i);
+        }
+        MappedByteBuffer mapping = buffer;
+
+        List<TaskItem> items = ParallelTaskDecoder.decode(ranges, threads, range -> {
+            ByteBuffer view = mapping.duplicate();
+            view.position(starts.get(range));
+            int rangeEnd = starts.get(range + 1);
+
+            TaskSnapshotReader rangeReader = new TaskSnapshotReader();
+            List<TaskItem> rangeItems = new ArrayList<>();
+            while (view.position() < rangeEnd) {
+                rangeItems.add(rangeReader.readRecord(view, view.getInt()));
+            }
+            return rangeItems;
+        });
+        items.forEach(consumer);
+    }
+
+//    DECODES THE RECORD AFTER ITS LENGTH AND LEAVES THE BUFFER AT THE NEXT ONE
+    private TaskItem readRecord(ByteBuffer buffer, int length) {
+        int end = buffer.position() + length;
+
+        long id = buffer.getLong();
+        int deadline = buffer.getInt();
+        byte[] shortDescription = readBytes(buffer);
+        byte[] details = readBytes(buffer);
+
+        buffer.position(end);
+        return new TaskItem(id, shortDescription, details, deadline);
+    }
+
+//    THE TASK ITEM KEEPS THE UTF-8 BYTES AS THEY ARE, SO NOTHING IS DECODED
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+//    MAPS THE NEXT WINDOW WHEN FEWER THAN COUNT BYTES ARE LEFT IN THE CURRENT ONE
+    private void ensure(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Snapshot record has a negative length");
+        }
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        long position = bufferStart + buffer.position();
+        if (channel.size() - position < count) {
+            throw new IOException("Snapshot is truncated");
+        }
+        map(position);
+    }
+
+    private void map(long position) throws IOException {
+        bufferStart = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_MAPPING, channel.size() - position));
+    }
+}
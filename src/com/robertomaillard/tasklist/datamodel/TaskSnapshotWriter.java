@@ -0,0 +1,50 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.*;
+
+/**
+ * Streaming writer for the binary task items snapshot file.
+ * Writes the format TaskSnapshotReader reads.
+ */
+
+class TaskSnapshotWriter implements Closeable {
+
+    private final OutputStream target;
+    private final DataOutputStream output;
+
+//    OPENS THE STREAM AND WRITES THE HEADER. GENERATION IS THE LAST JOURNAL SEGMENT ALREADY MERGED
+    TaskSnapshotWriter(OutputStream outputStream, long generation) throws IOException {
+        this.target = outputStream;
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+
+        output.writeInt(TaskSnapshotReader.MAGIC);
+        output.writeInt(TaskSnapshotReader.VERSION);
+        output.writeLong(generation);
+    }
+
+//    WRITES ONE RECORD
+    void write(TaskItem taskItem) throws IOException {
+        // THE TASK ITEM HOLDS ITS TEXT AS UTF-8 ALREADY
+        byte[] shortDescription = taskItem.shortDescriptionBytes();
+        byte[] details = taskItem.detailsBytes();
+
+        output.writeInt(8 + 4 + 4 + shortDescription.length + 4 + details.length);
+        output.writeLong(taskItem.getId());
+        output.writeInt(taskItem.getDeadlineEpochDay());
+        output.writeInt(shortDescription.length);
+        output.write(shortDescription);
+        output.writeInt(details.length);
+        output.write(details);
+    }
+
+//    WRITES THE END MARKER AND FLUSHES THE STREAM. A FILE IS SYNCED TO DISK BEFORE IT IS CLOSED
+    @Override
+    public void close() throws IOException {
+        output.writeInt(TaskSnapshotReader.END_OF_RECORDS);
+        output.flush();
+        if (target instanceof FileOutputStream) {
+            ((FileOutputStream) target).getFD().sync();
+        }
+        output.close();
+    }
+}
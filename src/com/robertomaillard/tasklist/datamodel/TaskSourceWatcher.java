@@ -0,0 +1,114 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread that notices when another program changes the data source.
+ * A file is watched with a WatchService on its directory. Its events are let settle first, so a program
+ * writing in several steps is checked once. A database has no file events worth trusting, so it is polled instead.
+ * Either way the check decides what changed. The watcher only tells it when to look.
+ */
+
+class TaskSourceWatcher {
+
+//    RUNS ON THE WATCHER THREAD WHEN THE DATA SOURCE MAY HAVE CHANGED
+    interface Check {
+        void run() throws Exception;
+    }
+
+//    QUIET TIME AFTER THE LAST FILE EVENT BEFORE THE FILE IS CHECKED
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Check check;
+    private final Thread thread;
+    private final WatchService watchService;
+    private volatile boolean closed;
+
+//    WATCHES THE FILE. THE CHECK RUNS AFTER IT WAS CREATED, REPLACED OR WRITTEN
+    TaskSourceWatcher(File file, Check check) throws IOException {
+        this.check = check;
+        Path path = file.getAbsoluteFile().toPath();
+        Path name = path.getFileName();
+        this.watchService = path.getFileSystem().newWatchService();
+        path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(() -> watch(name), "TaskList watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+//    RUNS THE CHECK EVERY INTERVAL
+    TaskSourceWatcher(long intervalMillis, Check check) {
+        this.check = check;
+        this.watchService = null;
+        this.thread = new Thread(() -> poll(intervalMillis), "TaskList watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+//    STOPS THE THREAD. A CHECK ALREADY RUNNING IS LEFT TO FINISH
+    void close() {
+        closed = true;
+        thread.interrupt();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.out.println("Couldn't close the watch service: " + e.getMessage());
+            }
+        }
+    }
+
+    private void watch(Path name) {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key, name);
+
+                // WAITS UNTIL THE WRITING PROGRAM HAS BEEN QUIET FOR A MOMENT
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key, name);
+                }
+                if (changed) {
+                    runCheck();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // CLOSED
+        }
+    }
+
+//    RETURNS TRUE IF AN EVENT OF THE KEY IS ABOUT THE FILE. OTHER FILES OF THE DIRECTORY ARE IGNORED
+    private static boolean drain(WatchKey key, Path name) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void poll(long intervalMillis) {
+        try {
+            while (!closed) {
+                Thread.sleep(intervalMillis);
+                runCheck();
+            }
+        } catch (InterruptedException e) {
+            // CLOSED
+        }
+    }
+
+    private void runCheck() {
+        if (closed) {
+            return;
+        }
+        try {
+            check.run();
+        } catch (Exception e) {
+            System.out.println("Couldn't check the data source for changes: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Streams every task item of one file to another file, in the same or another format, without TaskData or JavaFX.
+ * Task items go one at a time from the reader to the writer, so memory stays the same for any number of them.
+ * A SQLite target is written in transactions of one batch each. The target is written beside itself
+ * and moved into place at the end, so a failed transfer leaves any existing target as it was.
+ */
+
+public class TaskTransfer {
+
+    public enum Format {
+        XML,
+        DB,
+        CSV,
+        SNAPSHOT
+    }
+
+    /**
+     * Told the number of task items transferred so far, about once a second and once at the end.
+     */
+    public interface Progress {
+        void report(long items, long elapsedNanos, boolean done);
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+
+//    READS THE ROWS OF THE CURRENT AND OF EVERY OLDER SCHEMA. THE ROWID IS THE ID, AND THE DEADLINE IS AN EPOCH DAY
+//    OR dd-MM-yyyy TEXT
+    private static final String SELECT_ROWS_STATEMENT =
+            "SELECT rowid, shortDescription, details, deadline FROM taskitems ORDER BY rowid";
+
+    private final File source;
+    private final Format from;
+    private final File target;
+    private final Format to;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean overwrite;
+    private Progress progress = (items, elapsedNanos, done) -> {};
+
+    private long count;
+    private long maxId;
+    private long started;
+    private long lastReport;
+
+    public TaskTransfer(File source, Format from, File target, Format to) {
+        this.source = source;
+        this.from = from;
+        this.target = target;
+        this.to = to;
+    }
+
+//    RETURNS THE FORMAT OF A FILE BY ITS EXTENSION
+    public static Format formatOf(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".xml")) {
+            return Format.XML;
+        } else if (name.endsWith(".db") || name.endsWith(".sqlite") || name.endsWith(".sqlite3")) {
+            return Format.DB;
+        } else if (name.endsWith(".csv")) {
+            return Format.CSV;
+        } else if (name.endsWith(".snapshot")) {
+            return Format.SNAPSHOT;
+        }
+        throw new IllegalArgumentException("Can't tell the format of " + file + " from its extension");
+    }
+
+//    TASK ITEMS PER SQLite TRANSACTION
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+//    TRUE REPLACES A TARGET THAT EXISTS. OTHERWISE THE TRANSFER REFUSES TO START
+    public void setOverwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+    }
+
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+//    TRANSFERS EVERY TASK ITEM. RETURNS THE NUMBER TRANSFERRED
+    public long run() throws IOException {
+        if (!source.exists()) {
+            throw new FileNotFoundException(source + " doesn't exist");
+        }
+        if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+            throw new IOException("The source and the target are the same file");
+        }
+        TaskJournal targetJournal = journalOf(target, to);
+        if (!overwrite && (target.exists() || (targetJournal != null && targetJournal.hasSegments()))) {
+            throw new IOException(target + " already exists");
+        }
+
+        File partial = new File(target.getAbsoluteFile().getParentFile(), "." + target.getName() + ".transfer");
+        Files.deleteIfExists(partial.toPath());
+
+        count = 0;
+        maxId = 0;
+        started = System.nanoTime();
+        lastReport = started;
+
+        try {
+            try (Sink sink = openSink(partial)) {
+                read(item -> {
+                    try {
+                        sink.write(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count++;
+                    if ((count & 1023) == 0 && System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                        lastReport = System.nanoTime();
+                        progress.report(count, lastReport - started, false);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // SEGMENTS AND DATABASE LOGS LEFT BY THE OLD TARGET WOULD BE REPLAYED OVER THE NEW ONE
+            if (targetJournal != null) {
+                targetJournal.deleteSegments();
+            }
+            if (to == Format.DB) {
+                for (String suffix : new String[] {"-journal", "-wal", "-shm"}) {
+                    Files.deleteIfExists(new File(target.getPath() + suffix).toPath());
+                }
+            }
+            Files.move(partial.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+
+        progress.report(count, System.nanoTime() - started, true);
+        return count;
+    }
+
+//    PASSES EVERY TASK ITEM OF THE SOURCE TO THE CONSUMER. ONE READ WITHOUT AN ID GETS THE NEXT FREE ONE
+    private void read(Consumer<TaskItem> consumer) throws IOException {
+        Consumer<TaskItem> withIds = item -> {
+            if (item.getId() == 0) {
+                item.setId(++maxId);
+            } else {
+                maxId = Math.max(maxId, item.getId());
+            }
+            consumer.accept(item);
+        };
+
+        TaskJournal journal = journalOf(source, from);
+        if (journal != null && journal.hasSegments()) {
+            // THE SEGMENTS ARE REPLAYED OVER THE WHOLE FILE IN MEMORY, AS THE APPLICATION DOES ON LOAD
+            System.out.println("Merging the journal segments of " + source + " in memory first");
+            List<TaskItem> items = journal.load();
+            items.forEach(withIds);
+            return;
+        }
+
+        switch (from) {
+            case XML:
+                try {
+                    new TaskXMLReader().read(source, withIds);
+                } catch (XMLStreamException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                break;
+            case SNAPSHOT:
+                new TaskSnapshotReader().read(source, withIds);
+                break;
+            case CSV:
+                new TaskCSVReader().read(source, withIds);
+                break;
+            case DB:
+                readDB(withIds);
+                break;
+        }
+    }
+
+    private void readDB(Consumer<TaskItem> consumer) throws IOException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + source.getPath());
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(SELECT_ROWS_STATEMENT)) {
+
+            while (resultSet.next()) {
+                Object deadline = resultSet.getObject(4);
+                LocalDate date = deadline instanceof Number
+                        ? LocalDate.ofEpochDay(((Number) deadline).longValue())
+                        : DeadlineCodec.decode(resultSet.getString(4));
+                consumer.accept(new TaskItem(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), date));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private Sink openSink(File file) throws IOException {
+        switch (to) {
+            case XML:
+                try {
+                    TaskXMLWriter xmlWriter = new TaskXMLWriter(new FileOutputStream(file), 0);
+                    return new Sink() {
+                        @Override
+                        public void write(TaskItem item) throws IOException {
+                            try {
+                                xmlWriter.write(item);
+                            } catch (XMLStreamException e) {
+                                throw new IOException(e.getMessage(), e);
+                            }
+                        }
+
+                        @Override
+                        public void close() throws IOException {
+                            xmlWriter.close();
+                        }
+                    };
+                } catch (XMLStreamException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            case SNAPSHOT:
+                TaskSnapshotWriter snapshotWriter = new TaskSnapshotWriter(new FileOutputStream(file), 0);
+                return new Sink() {
+                    @Override
+                    public void write(TaskItem item) throws IOException {
+                        snapshotWriter.write(item);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        snapshotWriter.close();
+                    }
+                };
+            case CSV:
+                TaskCSVWriter csvWriter = new TaskCSVWriter(new FileOutputStream(file));
+                return new Sink() {
+                    @Override
+                    public void write(TaskItem item) throws IOException {
+                        csvWriter.write(item);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        csvWriter.close();
+                    }
+                };
+            default:
+                return new DBSink(file, batchSize);
+        }
+    }
+
+//    THE JOURNAL OF A FILE FORMAT THAT HAS ONE. ONLY ITS SEGMENTS ARE LOOKED AT
+    private static TaskJournal journalOf(File file, Format format) {
+        switch (format) {
+            case XML:
+                return new TaskXMLJournal(file);
+            case SNAPSHOT:
+                return new TaskSnapshotJournal(file);
+            default:
+                return null;
+        }
+    }
+
+    private interface Sink extends Closeable {
+        void write(TaskItem item) throws IOException;
+    }
+
+    /**
+     * Inserts into a new SQLite file with one prepared statement, committing every batchSize rows.
+     * Only the taskitems table is created. TaskData adds the deadline index, the search index
+     * and the change log the first time it opens the file.
+     */
+    private static class DBSink implements Sink {
+
+        private final Connection connection;
+        private final PreparedStatement insert;
+        private final int batchSize;
+        private int pending;
+
+        DBSink(File file, int batchSize) throws IOException {
+            this.batchSize = batchSize;
+            try {
+                connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(TaskData.CREATE_TABLE_STATEMENT);
+                }
+                connection.setAutoCommit(false);
+                insert = connection.prepareStatement(TaskData.INSERT_TASK_STATEMENT);
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void write(TaskItem item) throws IOException {
+            try {
+                insert.setLong(1, item.getId());
+                insert.setString(2, item.decodeShortDescription());
+                insert.setString(3, item.getDetails());
+                insert.setLong(4, item.getDeadlineEpochDay());
+                insert.addBatch();
+                if (++pending == batchSize) {
+                    commit();
+                }
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                commit();
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                try {
+                    insert.close();
+                    connection.close();
+                } catch (SQLException e) {
+                    System.out.println("Couldn't close connection: " + e.getMessage());
+                }
+            }
+        }
+
+        private void commit() throws SQLException {
+            if (pending > 0) {
+                insert.executeBatch();
+                connection.commit();
+                pending = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind persistence stage of TaskData.
+ * TaskData updates the ObservableList on the JavaFX thread and queues the matching operations here.
+ * A dedicated writer thread drains everything queued so far as one batch, so the UI never waits on the disk.
+ * Operations on a task item that is still queued are merged, so only the net change is written: an edit into the
+ * queued operation, a delete of a queued add cancels both, and an edit back to the saved item or the add of a
+ * task item whose delete is queued cancels the queued operation. The writer waits a moment after the first
+ * operation before draining, so a burst of edits is written once.
+ */
+
+class TaskWriter {
+
+//    PERSISTS ONE DRAINED BATCH. CALLED ON THE WRITER THREAD
+    interface Sink {
+        void persist(TaskBatch batch) throws Exception;
+    }
+
+//    HOW LONG THE FIRST QUEUED OPERATION WAITS FOR OTHERS BEFORE THE WRITER DRAINS THE QUEUE. A FLUSH DOESN'T WAIT
+    private static final long COALESCE_NANOS = 100_000_000L;
+
+    private final Sink sink;
+
+    private final Object lock = new Object();
+
+//    QUEUED OPERATIONS IN SUBMIT ORDER. A CANCELLED ONE IS LEFT AS NULL, SO THE OTHER POSITIONS STAY VALID
+    private List<TaskBatch.Operation> pending = new ArrayList<>();
+
+//    POSITION IN pending OF THE OPERATION THAT PRODUCED EACH QUEUED TASK ITEM, AND OF EACH QUEUED DELETE
+    private Map<TaskItem, Integer> pendingByItem = new IdentityHashMap<>();
+    private Map<TaskItem, Integer> pendingDeletes = new IdentityHashMap<>();
+
+//    WHEN THE FIRST OPERATION OF THE QUEUE WAS SUBMITTED, AND HOW MANY THREADS WAIT FOR A FLUSH
+    private long firstQueued;
+    private int flushing;
+
+    private boolean writing;
+    private boolean closed;
+
+//    THE OPERATIONS THE SINK IS WRITING. EMPTY BETWEEN WRITES
+    private List<TaskBatch.Operation> writingOperations = new ArrayList<>();
+
+//    CALLED ONCE THE QUEUED OPERATIONS ARE WRITTEN, AND ONCE THE OPERATIONS BEING WRITTEN ARE
+    private List<Runnable> queuedCallbacks = new ArrayList<>();
+    private List<Runnable> writingCallbacks = new ArrayList<>();
+
+    private volatile Consumer<Exception> errorHandler = e -> {};
+
+    private final Thread thread;
+
+    TaskWriter(Sink sink) {
+        this.sink = sink;
+        this.thread = new Thread(this::run, "TaskList writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void setErrorHandler(Consumer<Exception> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+//    QUEUES THE OPERATIONS OF THE BATCH
+    void submit(TaskBatch batch) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("The task writer is closed");
+            }
+            if (pending.isEmpty()) {
+                firstQueued = System.nanoTime();
+            }
+            for (TaskBatch.Operation operation : batch.getOperations()) {
+                enqueue(operation);
+            }
+            lock.notifyAll();
+        }
+    }
+
+//    BLOCKS UNTIL EVERY QUEUED OPERATION IS PERSISTED
+    void flush() {
+        synchronized (lock) {
+            flushing++;
+            lock.notifyAll();
+            try {
+                while (!pending.isEmpty() || writing) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                flushing--;
+            }
+        }
+    }
+
+//    RETURNS THE TASK ITEMS QUEUED OR BEING WRITTEN BY ID, AS THEY WILL BE SAVED. A DELETED ONE MAPS TO NULL.
+//    THE DATA SOURCE MAY STILL HOLD AN OLDER VERSION OF THESE IDS, OR NONE
+    Map<Long, TaskItem> unsavedItems() {
+        synchronized (lock) {
+            Map<Long, TaskItem> items = new HashMap<>();
+            for (List<TaskBatch.Operation> operations : List.of(writingOperations, pending)) {
+                for (TaskBatch.Operation operation : operations) {
+                    if (operation == null) {
+                        continue;
+                    }
+                    if (operation.getNewItem() != null) {
+                        items.put(operation.getNewItem().getId(), operation.getNewItem());
+                    } else {
+                        items.put(operation.getOldItem().getId(), null);
+                    }
+                }
+            }
+            return items;
+        }
+    }
+
+//    CALLS BACK ONCE EVERY OPERATION QUEUED SO FAR IS WRITTEN, OR FAILED TO BE, ON THE WRITER THREAD.
+//    RIGHT AWAY ON THIS THREAD IF NOTHING IS QUEUED OR BEING WRITTEN. UNLIKE flush() IT NEVER WAITS
+    void whenWritten(Runnable callback) {
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                queuedCallbacks.add(callback);
+                return;
+            }
+            if (writing) {
+                writingCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+//    FLUSHES AND STOPS THE WRITER THREAD
+    void close() {
+        flush();
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(TaskBatch.Operation operation) {
+        Integer position = operation.getOldItem() == null ? null : pendingByItem.remove(operation.getOldItem());
+
+        if (position != null) {
+            TaskBatch.Operation queued = pending.get(position);
+            if (operation.getType() == TaskBatch.Type.EDIT) {
+                if (queued.getType() == TaskBatch.Type.ADD) {
+                    // MERGES THE EDIT INTO THE QUEUED ADD
+                    pending.set(position, TaskBatch.Operation.add(operation.getNewItem()));
+                } else if (queued.getOldItem().hasSameContent(operation.getNewItem())) {
+                    // EDITED BACK TO WHAT IS SAVED. NOTHING IS LEFT TO WRITE, AND THE ROW KEEPS ITS VERSION
+                    pending.set(position, null);
+                    operation.getNewItem().setVersion(queued.getOldItem().getVersion());
+                    return;
+                } else {
+                    // MERGES THE EDIT INTO THE QUEUED EDIT
+                    pending.set(position, TaskBatch.Operation.edit(queued.getOldItem(), operation.getNewItem()));
+                }
+                pendingByItem.put(operation.getNewItem(), position);
+                return;
+            }
+
+            // A DELETE CANCELS THE QUEUED ADD, OR DELETES THE SAVED ITEM THE QUEUED EDIT WOULD HAVE CHANGED
+            if (queued.getType() == TaskBatch.Type.ADD) {
+                pending.set(position, null);
+            } else {
+                pending.set(position, TaskBatch.Operation.delete(queued.getOldItem()));
+                pendingDeletes.put(queued.getOldItem(), position);
+            }
+            return;
+        }
+
+        if (operation.getType() == TaskBatch.Type.ADD) {
+            // ADDING BACK A TASK ITEM WHOSE DELETE IS QUEUED LEAVES IT AS IT IS SAVED
+            position = pendingDeletes.remove(operation.getNewItem());
+            if (position != null) {
+                pending.set(position, null);
+                return;
+            }
+        }
+
+        pending.add(operation);
+        if (operation.getNewItem() != null) {
+            pendingByItem.put(operation.getNewItem(), pending.size() - 1);
+        } else {
+            pendingDeletes.put(operation.getOldItem(), pending.size() - 1);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<TaskBatch.Operation> drained;
+
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                // WAITS FOR MORE OPERATIONS TO MERGE UNLESS SOMEONE IS WAITING FOR THEM TO BE SAVED
+                long wait;
+                while (!closed && flushing == 0 && (wait = firstQueued + COALESCE_NANOS - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(lock, wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                drained = pending;
+                drained.removeIf(Objects::isNull);
+                pending = new ArrayList<>();
+                pendingByItem = new IdentityHashMap<>();
+                pendingDeletes = new IdentityHashMap<>();
+                writingCallbacks = queuedCallbacks;
+                queuedCallbacks = new ArrayList<>();
+                writingOperations = drained;
+                writing = !drained.isEmpty();
+            }
+
+            // EVERY QUEUED OPERATION MAY HAVE BEEN CANCELLED
+            if (!drained.isEmpty()) {
+                try {
+                    sink.persist(new TaskBatch(drained));
+                } catch (Exception e) {
+                    System.out.println("Couldn't save task items: " + e.getMessage());
+                    e.printStackTrace();
+                    errorHandler.accept(e);
+                }
+            }
+
+            List<Runnable> written;
+            synchronized (lock) {
+                writing = false;
+                writingOperations = new ArrayList<>();
+                written = writingCallbacks;
+                writingCallbacks = new ArrayList<>();
+                lock.notifyAll();
+            }
+            for (Runnable callback : written) {
+                callback.run();
+            }
+        }
+    }
+}
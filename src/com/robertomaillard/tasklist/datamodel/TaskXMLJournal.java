@@ -0,0 +1,40 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Journal for the task items XML file (TaskListItems.xml.journal.N).
+ * The XML root element records the last merged segment.
+ */
+
+class TaskXMLJournal extends TaskJournal {
+
+    TaskXMLJournal(File xmlFile) {
+        super(xmlFile, "XML");
+    }
+
+    @Override
+    long read(File file, Consumer<TaskItem> consumer) throws IOException {
+        try {
+            return new TaskXMLReader(getReadThreads()).read(file, consumer);
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    void write(File file, List<TaskItem> items, long generation) throws IOException {
+        try (TaskXMLWriter xmlWriter = new TaskXMLWriter(new FileOutputStream(file), generation)) {
+            for (TaskItem item : items) {
+                xmlWriter.write(item);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
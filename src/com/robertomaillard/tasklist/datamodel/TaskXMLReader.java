@@ -0,0 +1,257 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming StAX reader for the task items XML file.
+ * Hands every <task> to the consumer as soon as its closing tag is read,
+ * so memory use does not grow with the size of the file.
+ * A task written before ids existed has no id attribute and is read with id 0.
+ * With more than one thread the file is read whole, split into runs of task elements
+ * and the runs are parsed in parallel.
+ */
+
+class TaskXMLReader {
+
+    static final String TASK_ELEMENT = "task";
+    static final String ID_ATTRIBUTE = "id";
+    static final String SHORT_DESCRIPTION_ELEMENT = "shortDescription";
+    static final String DETAILS_ELEMENT = "details";
+    static final String DEADLINE_ELEMENT = "deadline";
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // MERGES ADJACENT TEXT AND CDATA INTO ONE CHARACTERS EVENT
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private static final byte[] TASK_START = ("<" + TASK_ELEMENT).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROOT_START = ("<" + TaskXMLWriter.ROOT_ELEMENT + ">").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROOT_END = ("</" + TaskXMLWriter.ROOT_ELEMENT + ">").getBytes(StandardCharsets.UTF_8);
+
+    private final int threads;
+
+    TaskXMLReader() {
+        this(1);
+    }
+
+    TaskXMLReader(int threads) {
+        this.threads = threads;
+    }
+
+//    READS EVERY TASK ELEMENT OF THE FILE AND PASSES THE TASK ITEM TO THE CONSUMER.
+//    RETURNS THE JOURNAL GENERATION STORED ON THE ROOT ELEMENT, OR 0 IF THERE IS NONE
+    long read(File inputFile, Consumer<TaskItem> consumer) throws IOException, XMLStreamException {
+        if (threads > 1 && inputFile.length() < Integer.MAX_VALUE) {
+            return readParallel(Files.readAllBytes(inputFile.toPath()), consumer);
+        }
+
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(inputFile), 1 << 16)) {
+            return parse(inputStream, consumer);
+        }
+    }
+
+//    SPLITS THE TASK ELEMENTS INTO RUNS AND PARSES EACH RUN INSIDE ITS OWN ROOT ELEMENT.
+//    THE FIRST RUN KEEPS THE FILE'S PROLOG AND ROOT ELEMENT, SO IT ALSO READS THE GENERATION
+    private long readParallel(byte[] content, Consumer<TaskItem> consumer) throws IOException, XMLStreamException {
+        int firstTask = indexOfTaskStart(content, 0, content.length);
+        int rootEnd = lastIndexOf(content, ROOT_END);
+        if (firstTask < 0 || rootEnd < firstTask || !isUTF8(content, firstTask) || hasUnsplittableMarkup(content)) {
+            return parse(new ByteArrayInputStream(content), consumer);
+        }
+
+        // RUN BOUNDARIES ARE THE TASK STARTS CLOSEST AFTER EVENLY SPACED OFFSETS
+        int chunks = threads * ParallelTaskDecoder.CHUNKS_PER_THREAD;
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 1; i < chunks; i++) {
+            int start = indexOfTaskStart(content, firstTask + (int) ((long) (rootEnd - firstTask) * i / chunks), rootEnd);
+            if (start < 0) {
+                break;
+            }
+            if (start > starts.get(starts.size() - 1)) {
+                starts.add(start);
+            }
+        }
+        starts.add(rootEnd);
+
+        List<Integer> runs = new ArrayList<>();
+        for (int i = 0; i < starts.size() - 1; i++) {
+            runs.add(i);
+        }
+        long[] generation = new long[1];
+
+        List<TaskItem> items = ParallelTaskDecoder.decode(runs, threads, run -> {
+            int from = starts.get(run);
+            int to = starts.get(run + 1);
+            InputStream runStream = new ByteArrayInputStream(content, from, to - from);
+            if (run > 0) {
+                runStream = new SequenceInputStream(new ByteArrayInputStream(ROOT_START), runStream);
+            }
+            runStream = new SequenceInputStream(runStream, new ByteArrayInputStream(ROOT_END));
+
+            List<TaskItem> runItems = new ArrayList<>();
+            long runGeneration = parse(runStream, runItems::add);
+            if (run == 0) {
+                generation[0] = runGeneration;
+            }
+            return runItems;
+        });
+
+        items.forEach(consumer);
+        return generation[0];
+    }
+
+    private long parse(InputStream inputStream, Consumer<TaskItem> consumer) throws XMLStreamException {
+
+        long generation = 0;
+
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+
+        try {
+            StringBuilder text = new StringBuilder();
+            boolean inTask = false;
+            long id = 0;
+            String shortDescription = "";
+            String details = "";
+            LocalDate deadline = null;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+
+                    case XMLStreamConstants.START_ELEMENT:
+                        text.setLength(0);
+                        if (TASK_ELEMENT.equals(reader.getLocalName())) {
+                            inTask = true;
+                            String idValue = reader.getAttributeValue(null, ID_ATTRIBUTE);
+                            id = idValue == null ? 0 : Long.parseLong(idValue);
+                            shortDescription = "";
+                            details = "";
+                            deadline = null;
+                        } else if (TaskXMLWriter.ROOT_ELEMENT.equals(reader.getLocalName())) {
+                            String value = reader.getAttributeValue(null, TaskXMLWriter.GENERATION_ATTRIBUTE);
+                            if (value != null) {
+                                generation = Long.parseLong(value);
+                            }
+                        }
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (inTask) {
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (!inTask) {
+                            break;
+                        }
+
+                        switch (reader.getLocalName()) {
+                            case SHORT_DESCRIPTION_ELEMENT:
+                                shortDescription = text.toString();
+                                break;
+                            case DETAILS_ELEMENT:
+                                details = text.toString();
+                                break;
+                            case DEADLINE_ELEMENT:
+                                // DECODED STRAIGHT FROM THE BUFFER. NO String IS BUILT FOR THE DATE
+                                deadline = DeadlineCodec.decode(text);
+                                break;
+                            case TASK_ELEMENT:
+                                inTask = false;
+                                if (deadline == null) {
+                                    throw new XMLStreamException("Task without a deadline", reader.getLocation());
+                                }
+                                consumer.accept(new TaskItem(id, shortDescription, details, deadline));
+                                break;
+                        }
+                        text.setLength(0);
+                        break;
+                }
+            }
+
+        } finally {
+            reader.close();
+        }
+        return generation;
+    }
+
+//    A CDATA SECTION, COMMENT OR PROCESSING INSTRUCTION MAY HOLD A <task THAT ISN'T A START TAG, AND A DOCTYPE MAY
+//    DECLARE ENTITIES THE RUNS WOULDN'T KNOW. TaskXMLWriter WRITES NONE OF THEM, SO ONLY A HAND EDITED FILE IS READ
+//    SEQUENTIALLY. THE XML DECLARATION IS THE ONLY <? ALLOWED, AS THE FIRST MARKUP OF THE FILE
+    private static boolean hasUnsplittableMarkup(byte[] content) {
+        boolean firstMarkup = true;
+        for (int i = 0; i < content.length - 1; i++) {
+            if (content[i] == '<') {
+                byte next = content[i + 1];
+                if (next == '!' || (next == '?' && !firstMarkup)) {
+                    return true;
+                }
+                firstMarkup = false;
+            }
+        }
+        return false;
+    }
+
+//    FINDS THE NEXT <task START TAG. <taskitems AND OTHER LONGER NAMES DON'T MATCH
+    private static int indexOfTaskStart(byte[] content, int from, int to) {
+        for (int i = indexOf(content, TASK_START, from, to); i >= 0; i = indexOf(content, TASK_START, i + 1, to)) {
+            int next = i + TASK_START.length;
+            if (next < to) {
+                byte b = content[next];
+                if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] content, byte[] pattern, int from, int to) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (content[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] content, byte[] pattern) {
+        outer:
+        for (int i = content.length - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (content[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+//    THE RUNS AFTER THE FIRST HAVE NO XML DECLARATION AND ARE PARSED AS UTF-8
+    private static boolean isUTF8(byte[] content, int prologEnd) {
+        String prolog = new String(content, 0, prologEnd, StandardCharsets.ISO_8859_1).toLowerCase();
+        int encoding = prolog.indexOf("encoding");
+        return encoding < 0 || prolog.startsWith("utf-8", prolog.indexOf('"', encoding) + 1)
+                || prolog.startsWith("utf-8", prolog.indexOf('\'', encoding) + 1);
+    }
+}
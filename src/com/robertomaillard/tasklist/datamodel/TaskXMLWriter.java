@@ -0,0 +1,75 @@
+package com.robertomaillard.tasklist.datamodel;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+
+/**
+ * Streaming StAX writer for the task items XML file.
+ * Writes the same <taskitems><task>...</task></taskitems> format TaskXMLReader reads.
+ */
+
+class TaskXMLWriter implements Closeable {
+
+    static final String ROOT_ELEMENT = "taskitems";
+    static final String GENERATION_ATTRIBUTE = "generation";
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final OutputStream target;
+    private final OutputStream outputStream;
+    private final XMLStreamWriter writer;
+
+//    OPENS THE STREAM AND WRITES THE ROOT ELEMENT. GENERATION IS THE LAST JOURNAL SEGMENT ALREADY MERGED
+    TaskXMLWriter(OutputStream outputStream, long generation) throws XMLStreamException {
+        this.target = outputStream;
+        this.outputStream = new BufferedOutputStream(outputStream, 1 << 16);
+        this.writer = OUTPUT_FACTORY.createXMLStreamWriter(this.outputStream, "UTF-8");
+
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(ROOT_ELEMENT);
+        if (generation > 0) {
+            writer.writeAttribute(GENERATION_ATTRIBUTE, Long.toString(generation));
+        }
+        writer.writeCharacters("\n");
+    }
+
+//    WRITES ONE TASK ELEMENT
+    void write(TaskItem taskItem) throws XMLStreamException {
+        writer.writeStartElement(TaskXMLReader.TASK_ELEMENT);
+        writer.writeAttribute(TaskXMLReader.ID_ATTRIBUTE, Long.toString(taskItem.getId()));
+
+        writer.writeStartElement(TaskXMLReader.SHORT_DESCRIPTION_ELEMENT);
+        writer.writeCharacters(taskItem.decodeShortDescription());
+        writer.writeEndElement();
+
+        writer.writeStartElement(TaskXMLReader.DETAILS_ELEMENT);
+        writer.writeCharacters(taskItem.getDetails());
+        writer.writeEndElement();
+
+        writer.writeStartElement(TaskXMLReader.DEADLINE_ELEMENT);
+        writer.writeCharacters(DeadlineCodec.encode(taskItem.getDeadline()));
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+    }
+
+//    CLOSES THE ROOT ELEMENT AND FLUSHES THE STREAM. A FILE IS SYNCED TO DISK BEFORE IT IS CLOSED
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        outputStream.flush();
+        if (target instanceof FileOutputStream) {
+            ((FileOutputStream) target).getFD().sync();
+        }
+        outputStream.close();
+    }
+}
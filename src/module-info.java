@@ -2,6 +2,9 @@ module TaskList {
     requires javafx.fxml;
     requires javafx.controls;
     requires java.sql;
+    requires java.management;
+    requires jdk.httpserver;
 
     opens com.robertomaillard.tasklist;
+    exports com.robertomaillard.tasklist.datamodel to java.management;
 }
\ No newline at end of file